@@ -0,0 +1,10 @@
+package traceagent;
+
+import java.lang.annotation.*;
+
+// Advice parameter bound to the TraceMethod id of the instrumented method,
+// a constant computed when the class is transformed
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface MethodId {
+}
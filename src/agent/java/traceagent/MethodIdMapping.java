@@ -0,0 +1,76 @@
+package traceagent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import app.debug.Trace;
+import app.debug.TraceArg;
+import app.debug.TraceMethod;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.annotation.AnnotationDescription;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.method.ParameterDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.matcher.ElementMatcher;
+
+// Binds @MethodId: registers the instrumented method's label and argument
+// keys and puts its id into the advice as a constant
+public class MethodIdMapping implements Advice.OffsetMapping {
+
+    @Override
+    public Target resolve(TypeDescription instrumentedType, MethodDescription instrumentedMethod,
+                          Assigner assigner, Advice.ArgumentHandler argumentHandler, Sort sort) {
+        return Target.ForStackManipulation.of(register(instrumentedType, instrumentedMethod));
+    }
+
+    static int register(TypeDescription type, MethodDescription method) {
+        AnnotationDescription.Loadable<Trace> trace = method.getDeclaredAnnotations().ofType(Trace.class);
+        String label = trace != null && !trace.load().value().isEmpty()
+            ? trace.load().value()
+            : type.getSimpleName() + "." + method.getName();
+
+        List<String> keys = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        boolean allArgs = trace != null && trace.load().args();
+        for (ParameterDescription param : method.getParameters()) {
+            AnnotationDescription.Loadable<TraceArg> traceArg = param.getDeclaredAnnotations().ofType(TraceArg.class);
+            if (traceArg == null && !allArgs) {
+                continue;
+            }
+
+            // parameter names need -parameters
+            String key = traceArg != null ? traceArg.load().value() : null;
+            if (key == null || key.isEmpty()) {
+                key = param.isNamed() ? param.getName() : "arg" + param.getIndex();
+            }
+            keys.add(key);
+            indexes.add(param.getIndex());
+        }
+
+        return TraceMethod.register(
+            type.getName() + "." + method.getInternalName() + method.getDescriptor(),
+            label,
+            keys.toArray(new String[0]),
+            indexes.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // methods that record arguments get the advice that passes them
+    static ElementMatcher.Junction<MethodDescription> capturesArgs() {
+        return new ElementMatcher.Junction.AbstractBase<>() {
+            @Override
+            public boolean matches(MethodDescription method) {
+                AnnotationDescription.Loadable<Trace> trace = method.getDeclaredAnnotations().ofType(Trace.class);
+                if (trace != null && trace.load().args()) {
+                    return true;
+                }
+                for (ParameterDescription param : method.getParameters()) {
+                    if (param.getDeclaredAnnotations().isAnnotationPresent(TraceArg.class)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+}
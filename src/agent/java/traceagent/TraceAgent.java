@@ -1,31 +1,113 @@
 package traceagent;
 
-import static net.bytebuddy.matcher.ElementMatchers.any;
 import static net.bytebuddy.matcher.ElementMatchers.isAnnotatedWith;
+import static net.bytebuddy.matcher.ElementMatchers.nameStartsWith;
+import static net.bytebuddy.matcher.ElementMatchers.none;
+import static net.bytebuddy.matcher.ElementMatchers.not;
 
+import java.io.IOException;
 import java.lang.instrument.Instrumentation;
+import java.nio.file.Path;
 import java.security.ProtectionDomain;
+import java.util.HashMap;
+import java.util.Map;
 
 import app.debug.Trace;
 import app.debug.TraceLogger;
+import app.debug.TraceWriter;
 import net.bytebuddy.agent.builder.AgentBuilder;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.utility.JavaModule;
 
+// -javaagent:jsonl-viewer-agent.jar[=key=value,...]
+//   file=trace.json   trace file; rotated files are trace.1.json, trace.2.json, ...
+//   gzip=false        compress the trace (adds .gz)
+//   rotateMB=512      start a new file after this many MB, 0 for a single file
+//   keep=10           number of files kept when rotating
+//   flushMs=1000      how often buffered events reach the file
+//   include=app.      only classes whose names start with one of these prefixes, ';' separated
+//   exclude=          and none of these
+//   sample=1.0        fraction of calls traced, picked at random
+//   thresholdUs=      time every call: slower ones become complete events, all are counted in
+//                     per-method statistics written to stats at exit. Unset: begin/end events for every call
+//   stats=trace-methods.txt
 public class TraceAgent {
-    public static void premain(String agentArgs, Instrumentation inst) {
-        System.out.println("Instrumenting code for tracing");
+    static Map<String, String> parseArgs(String agentArgs) {
+        Map<String, String> options = new HashMap<>();
+        if (agentArgs == null || agentArgs.isBlank()) {
+            return options;
+        }
+        for (String pair : agentArgs.split(",")) {
+            int eq = pair.indexOf('=');
+            options.put(eq < 0 ? pair.trim() : pair.substring(0, eq).trim(), eq < 0 ? "true" : pair.substring(eq + 1).trim());
+        }
+        return options;
+    }
+
+    // begin/end advice on the @Trace methods of the matching types
+    public static void install(Instrumentation inst, ElementMatcher<? super TypeDescription> types) {
+        install(inst, types, false);
+    }
 
+    // timed: complete events and call statistics instead of begin/end
+    public static void install(Instrumentation inst, ElementMatcher<? super TypeDescription> types, boolean timed) {
+        Class<?> plain = timed ? TraceAdviceWithCompleteEvent.class : TraceAdvice.class;
+        Class<?> withArgs = timed ? TraceArgsAdviceWithCompleteEvent.class : TraceArgsAdvice.class;
         new AgentBuilder.Default()
-            .type(any())
+            .with(AgentBuilder.Listener.StreamWriting.toSystemError().withErrorsOnly())
+            .type(types)
             .transform((DynamicType.Builder<?> builder, TypeDescription type, ClassLoader classLoader, JavaModule module, ProtectionDomain protectionDomain) -> builder
-                .method(isAnnotatedWith(Trace.class))
-                .intercept(Advice.to(TraceAdvice.class))
+                .method(isAnnotatedWith(Trace.class).and(not(MethodIdMapping.capturesArgs())))
+                .intercept(advice(plain))
+                .method(isAnnotatedWith(Trace.class).and(MethodIdMapping.capturesArgs()))
+                .intercept(advice(withArgs))
             )
             .installOn(inst);
+    }
+
+    // names starting with any of the ';' separated prefixes
+    static ElementMatcher.Junction<TypeDescription> prefixes(String list) {
+        ElementMatcher.Junction<TypeDescription> matcher = none();
+        for (String prefix : list.split(";")) {
+            if (!prefix.isBlank()) {
+                matcher = matcher.or(nameStartsWith(prefix.trim()));
+            }
+        }
+        return matcher;
+    }
+
+    static Advice advice(Class<?> adviceClass) {
+        return Advice.withCustomMapping()
+            .bind(MethodId.class, new MethodIdMapping())
+            .to(adviceClass);
+    }
+
+    public static void premain(String agentArgs, Instrumentation inst) {
+        Map<String, String> options = parseArgs(agentArgs);
+        String include = options.getOrDefault("include", "app.");
+        String exclude = options.getOrDefault("exclude", "");
+        String threshold = options.get("thresholdUs");
+        System.out.println("Instrumenting code for tracing: " + include + (exclude.isEmpty() ? "" : " except " + exclude));
+
+        TraceLogger.configure(
+            Double.parseDouble(options.getOrDefault("sample", "1.0")),
+            threshold == null ? -1 : Long.parseLong(threshold),
+            Path.of(options.getOrDefault("stats", "trace-methods.txt")));
+        install(inst, prefixes(include).and(not(prefixes(exclude))), threshold != null);
 
-        TraceLogger.setEnabled(true);
+        try {
+            TraceLogger.open(new TraceWriter(
+                Path.of(options.getOrDefault("file", "trace.json")),
+                Boolean.parseBoolean(options.getOrDefault("gzip", "false")),
+                Long.parseLong(options.getOrDefault("rotateMB", "512")) << 20,
+                Integer.parseInt(options.getOrDefault("keep", "10")),
+                Long.parseLong(options.getOrDefault("flushMs", "1000"))));
+        }
+        catch (IOException e) {
+            System.err.println("Tracing disabled: " + e);
+        }
     }
 }
@@ -0,0 +1,30 @@
+package traceagent;
+
+import net.bytebuddy.asm.Advice;
+
+import app.debug.TraceLogger;
+import app.debug.TraceMethod;
+
+// Begin/end events for methods with @Trace(args = true) or @TraceArg
+// parameters; the argument array is kept and stringified when drained
+public class TraceArgsAdvice {
+
+    @Advice.OnMethodEnter
+    public static boolean onEnter(
+        @MethodId int id,
+        @Advice.AllArguments Object[] args
+    ) {
+        if (!TraceLogger.sample()) {
+            return false;
+        }
+        TraceLogger.begin(TraceMethod.get(id), args);
+        return true;
+    }
+
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void onExit(@MethodId int id, @Advice.Enter boolean sampled) {
+        if (sampled) {
+            TraceLogger.end(TraceMethod.get(id));
+        }
+    }
+}
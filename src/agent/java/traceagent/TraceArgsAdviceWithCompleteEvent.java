@@ -0,0 +1,27 @@
+package traceagent;
+
+import net.bytebuddy.asm.Advice;
+
+import app.debug.TraceLogger;
+import app.debug.TraceMethod;
+
+// TraceAdviceWithCompleteEvent for methods that record arguments
+public class TraceArgsAdviceWithCompleteEvent
+{
+
+    @Advice.OnMethodEnter
+    public static long onEnter() {
+        return TraceLogger.sample() ? System.nanoTime() : Long.MIN_VALUE;
+    }
+
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void onExit(
+        @MethodId int id,
+        @Advice.Enter long startTime,
+        @Advice.AllArguments Object[] args
+    ) {
+        if (startTime != Long.MIN_VALUE) {
+            TraceLogger.call(TraceMethod.get(id), System.nanoTime() - startTime, args);
+        }
+    }
+}
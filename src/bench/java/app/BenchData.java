@@ -0,0 +1,111 @@
+package app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Deterministic inputs shared by the benchmarks
+public class BenchData {
+    public enum Shape { small, large, deep }
+
+    private static final String[] LEVELS = { "INFO", "WARN", "ERROR", "DEBUG" };
+    private static final String[] SERVICES = { "api", "auth", "billing", "search", "gateway" };
+
+    // one record of the given shape, compact JSON
+    public static String record(Shape shape, int seed) {
+        Random random = new Random(seed);
+        return switch (shape) {
+            case small -> small(random, seed);
+            case large -> large(random, seed);
+            case deep -> deep(random, seed, 32);
+        };
+    }
+
+    private static String small(Random random, int seed) {
+        return String.format(
+            "{\"ts\":%d,\"level\":\"%s\",\"service\":\"%s\",\"latency_ms\":%d,\"msg\":\"request %d done\"}",
+            1_700_000_000_000L + seed * 17L,
+            LEVELS[random.nextInt(LEVELS.length)],
+            SERVICES[random.nextInt(SERVICES.length)],
+            random.nextInt(2000),
+            seed);
+    }
+
+    private static String large(Random random, int seed) {
+        StringBuilder out = new StringBuilder("{\"ts\":").append(1_700_000_000_000L + seed).append(",\"fields\":{");
+        for (int i = 0; i < 200; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append("\"key").append(i).append("\":");
+            switch (i % 4) {
+                case 0 -> out.append(random.nextInt(1_000_000));
+                case 1 -> out.append('"').append(text(random, 40)).append('"');
+                case 2 -> out.append(random.nextBoolean());
+                default -> out.append("[1,2,3,{\"x\":\"").append(text(random, 8)).append("\"}]");
+            }
+        }
+        return out.append("},\"level\":\"").append(LEVELS[random.nextInt(LEVELS.length)]).append("\"}").toString();
+    }
+
+    private static String deep(Random random, int seed, int depth) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            out.append("{\"id\":").append(seed + i).append(",\"name\":\"").append(text(random, 6)).append("\",\"child\":");
+        }
+        out.append("null");
+        out.append("}".repeat(depth));
+        return out.toString();
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder out = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            out.append((char) ('a' + random.nextInt(26)));
+        }
+        return out.toString();
+    }
+
+    // rows of the given shape separated by newlines
+    public static String lines(Shape shape, int rows) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            out.append(record(shape, i)).append('\n');
+        }
+        return out.toString();
+    }
+
+    public static ByteBuffer buffer(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    public static Path tempFile(String text) throws IOException {
+        Path file = Files.createTempFile("bench", ".jsonl");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, text);
+        return file;
+    }
+
+    // reader that keeps rows but reports them nowhere
+    public static JsonLineReader reader() {
+        return new JsonLineReader(new JsonLineReader.Listener() {
+            @Override
+            public void fileAdded(String fileName, int fileId) {}
+
+            @Override
+            public void rowAdded(LineBounds row) {}
+
+            @Override
+            public void fileRemoved(String fileName, int fileId) {}
+
+            @Override
+            public void loaded(int files, long rows) {}
+        });
+    }
+}
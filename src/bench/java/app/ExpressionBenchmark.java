@@ -0,0 +1,51 @@
+package app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JsonPathExpressionEvaluator: evaluation on a parsed row, and parse + evaluate
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+
+    @Param({
+        "$.level == \"ERROR\"",
+        "$.latency_ms > 1000 && $.service != \"auth\"",
+        "($.latency_ms + 10) * 2 >= 500 || $.level == \"WARN\""
+    })
+    public String expression;
+
+    private String json;
+    private Object context;
+
+    @Setup
+    public void setup() {
+        json = BenchData.record(BenchData.Shape.small, 42);
+        context = JsonPathExpressionEvaluator.parseJson(json);
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return JsonPathExpressionEvaluator.evaluate(expression, context);
+    }
+
+    @Benchmark
+    public boolean parseAndEvaluate() {
+        return JsonPathExpressionEvaluator.evaluateBoolean(expression, JsonPathExpressionEvaluator.parseJson(json));
+    }
+}
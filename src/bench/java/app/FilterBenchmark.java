@@ -0,0 +1,78 @@
+package app;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.FilterViewController.ActionType;
+import app.FilterViewController.FilterRule;
+import app.FilterViewController.MatchType;
+
+// one rule of each MatchType against a row: FilterRule.matches (compiles per
+// call) and the precompiled FilterEngine rule
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+    private static final int ROWS = 1024;
+
+    @Param({ "case_sensitive", "case_insensitive", "regex", "expr" })
+    public MatchType type;
+
+    @Param({ "small", "large" })
+    public BenchData.Shape shape;
+
+    private FilterRule rule;
+    private FilterEngine engine;
+    private String[] rows;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        rule = new FilterRule();
+        rule.action.set(ActionType.include);
+        rule.type.set(type);
+        rule.expression.set(switch (type) {
+            case case_sensitive -> "ERROR";
+            case case_insensitive -> "error";
+            case regex -> "\"level\":\"(ERROR|WARN)\"";
+            case expr -> "$.level == \"ERROR\"";
+        });
+        engine = FilterEngine.of(List.of(rule));
+
+        rows = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = BenchData.record(shape, i);
+        }
+    }
+
+    private String nextRow() {
+        String row = rows[next];
+        next = (next + 1) & (ROWS - 1);
+        return row;
+    }
+
+    @Benchmark
+    public boolean ruleMatches() {
+        return rule.matches(nextRow(), next);
+    }
+
+    @Benchmark
+    public Object engineLastMatch() {
+        return engine.lastMatch(nextRow(), next);
+    }
+}
@@ -0,0 +1,132 @@
+package app;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+
+// Retained heap per loaded row, structure by structure, with a budget for
+// each. Rows go through the real ingest path and are then held the way the
+// viewer holds them; every step is measured as the growth of the used heap
+// after forced GCs, so a step's figure includes everything it allocated and
+// kept. Exits with 1 when a structure is over its budget.
+//
+//   java app.HeapFootprint --rows=100000 --budget.entries=8 [generator options]
+public class HeapFootprint {
+    // bytes per row for the default corpus (about 400 bytes a row), some 1.5 times what
+    // the structures took when this was written; larger rows need larger string and tree budgets
+    private static final Map<String, Double> DEFAULT_BUDGETS = new LinkedHashMap<>();
+    static {
+        DEFAULT_BUDGETS.put("bounds", 100.0);       // LineBounds and the reader's RowIndex
+        DEFAULT_BUDGETS.put("entries", 8.0);        // the table's ObservableList
+        DEFAULT_BUDGETS.put("filtered", 10.0);      // FilteredList index arrays
+        DEFAULT_BUDGETS.put("strings", 800.0);      // reader's row string cache
+        DEFAULT_BUDGETS.put("trees", 3200.0);       // parsed rows as cached by the table
+    }
+
+    private static record Step(String name, long bytes, double budget) {}
+
+    public static void main(String[] args) throws Exception {
+        WorkloadGenerator.Options options = new WorkloadGenerator.Options();
+        Map<String, Double> budgets = new LinkedHashMap<>(DEFAULT_BUDGETS);
+        for (String arg : options.parse(args)) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? "" : arg.substring(0, eq);
+            if (name.startsWith("--budget.") && budgets.containsKey(name.substring("--budget.".length()))) {
+                budgets.put(name.substring("--budget.".length()), Double.parseDouble(arg.substring(eq + 1)));
+            } else {
+                System.err.println("usage: HeapFootprint [generator options] [--budget.STRUCTURE=BYTES_PER_ROW]...");
+                System.err.println("structures: " + String.join(", ", budgets.keySet()));
+                System.exit(2);
+            }
+        }
+
+        Path file = Files.createTempFile("footprint", ".jsonl");
+        file.toFile().deleteOnExit();
+        new WorkloadGenerator(options).write(file);
+
+        List<Step> steps = new ArrayList<>();
+        long rows = measure(file, budgets, steps);
+
+        System.out.printf("%s, %.1f MB%n", options, Files.size(file) / 1e6);
+        System.out.printf("%-10s %14s %12s %12s%n", "structure", "retained", "bytes/row", "budget");
+        boolean over = false;
+        double total = 0;
+        for (Step step : steps) {
+            double perRow = (double) step.bytes() / rows;
+            total += perRow;
+            boolean exceeded = perRow > step.budget();
+            over |= exceeded;
+            System.out.printf("%-10s %11.1f MB %12.1f %12.1f%s%n",
+                step.name(), step.bytes() / 1e6, perRow, step.budget(), exceeded ? "  OVER BUDGET" : "");
+        }
+        System.out.printf("%-10s %14s %12.1f%n", "total", "", total);
+
+        if (over) {
+            System.exit(1);
+        }
+    }
+
+    private static long measure(Path file, Map<String, Double> budgets, List<Step> steps) throws Exception {
+        long before = heapAfterGc();
+
+        JsonLineReader reader = BenchData.reader();
+        reader.addFile(file);
+        List<LineBounds> bounds = reader.getAllBounds();
+        before = record(steps, budgets, "bounds", before);
+
+        // TableViewController adds rows one by one as the reader reports them
+        ObservableList<LineBounds> entries = FXCollections.observableArrayList();
+        for (LineBounds row : bounds) {
+            entries.add(row);
+        }
+        before = record(steps, budgets, "entries", before);
+
+        FilteredList<LineBounds> filtered = new FilteredList<>(entries, row -> (row.objIndex() & 1) == 0);
+        before = record(steps, budgets, "filtered", before);
+
+        // a filter pass reads every row through the reader's cache...
+        for (LineBounds row : bounds) {
+            reader.getString(row);
+        }
+        before = record(steps, budgets, "strings", before);
+
+        // ...and the table keeps the parsed tree of each (sharing the string above)
+        Map<LineBounds, JsonNode> trees = new HashMap<>();
+        for (LineBounds row : bounds) {
+            trees.put(row, AppSettings.getMapper().readTree(reader.getString(row)));
+        }
+        record(steps, budgets, "trees", before);
+
+        Reference.reachabilityFence(reader);
+        Reference.reachabilityFence(entries);
+        Reference.reachabilityFence(filtered);
+        Reference.reachabilityFence(trees);
+        return bounds.size();
+    }
+
+    private static long record(List<Step> steps, Map<String, Double> budgets, String name, long before) throws InterruptedException {
+        long after = heapAfterGc();
+        steps.add(new Step(name, after - before, budgets.get(name)));
+        return after;
+    }
+
+    private static long heapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,205 @@
+package app;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import app.FilterViewController.ActionType;
+import app.FilterViewController.FilterRule;
+import app.FilterViewController.MatchType;
+
+// End-to-end ingest without the GUI: a corpus from WorkloadGenerator (or an
+// existing file) goes through JsonLineReader, column discovery and one filter
+// pass, the work the viewer does when a file is opened. Run in a fresh JVM per
+// measurement; a single cold run is what a user sees, so there is no warmup.
+//
+//   java app.IngestBenchmark --rows=1000000 --keys=20 --pretty=0.01 --malformed=0.001
+//   java app.IngestBenchmark --file=big.jsonl --rules=rules.json
+public class IngestBenchmark {
+    private static record Report(String input, long bytes, long rows, int columns, long visible,
+            double firstRowMillis, double ingestSeconds, double filterSeconds, long peakHeap, long retainedHeap) {
+        double ingestMBps() {
+            return bytes / 1e6 / ingestSeconds;
+        }
+
+        double heapBytesPerRow() {
+            return rows == 0 ? 0 : (double) retainedHeap / rows;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("""
+                input            %s
+                size             %,.1f MB, %,d rows, %d columns, %,d visible
+                first row        %.2f ms
+                ingest           %.2f s, %.1f MB/s, %,.0f rows/s
+                filter           %.2f s, %,.0f rows/s
+                peak heap        %,.1f MB
+                retained heap    %,.1f MB, %.1f bytes/row""",
+                input, bytes / 1e6, rows, columns, visible,
+                firstRowMillis,
+                ingestSeconds, ingestMBps(), rows / ingestSeconds,
+                filterSeconds, rows / filterSeconds,
+                peakHeap / 1e6,
+                retainedHeap / 1e6, heapBytesPerRow());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        WorkloadGenerator.Options options = new WorkloadGenerator.Options();
+        Path file = null;
+        Path rulesFile = null;
+        Path jsonOut = null;
+        for (String arg : options.parse(args)) {
+            if (arg.startsWith("--file=")) {
+                file = Path.of(arg.substring("--file=".length()));
+            } else if (arg.startsWith("--rules=")) {
+                rulesFile = Path.of(arg.substring("--rules=".length()));
+            } else if (arg.startsWith("--json=")) {
+                jsonOut = Path.of(arg.substring("--json=".length()));
+            } else {
+                System.err.println("""
+                    usage: IngestBenchmark [--file=FILE | generator options] [--rules=FILE] [--json=FILE]
+                      --file=FILE    ingest an existing file instead of a generated corpus
+                      --rules=FILE   rule set as saved by the viewer (default: a few rules of each type)
+                      --json=FILE    also write the report as JSON
+                    generator options are those of WorkloadGenerator: --rows= --keys= --depth= ...
+                    """);
+                System.exit(2);
+            }
+        }
+
+        String input;
+        if (file == null) {
+            file = Files.createTempFile("ingest", ".jsonl");
+            file.toFile().deleteOnExit();
+            new WorkloadGenerator(options).write(file);
+            input = "generated " + options;
+        } else {
+            input = file.toString();
+        }
+
+        Report report = run(file, input, FilterEngine.of(rules(rulesFile)));
+        System.out.println(report);
+        if (jsonOut != null) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("input", report.input());
+            json.put("bytes", report.bytes());
+            json.put("rows", report.rows());
+            json.put("columns", report.columns());
+            json.put("visible", report.visible());
+            json.put("firstRowMillis", report.firstRowMillis());
+            json.put("ingestSeconds", report.ingestSeconds());
+            json.put("ingestMBps", report.ingestMBps());
+            json.put("filterSeconds", report.filterSeconds());
+            json.put("peakHeapBytes", report.peakHeap());
+            json.put("heapBytesPerRow", report.heapBytesPerRow());
+            AppSettings.getMapper().writerWithDefaultPrettyPrinter().writeValue(jsonOut.toFile(), json);
+        }
+    }
+
+    private static List<FilterRule> rules(Path file) throws Exception {
+        List<FilterRule> rules = new ArrayList<>();
+        if (file != null) {
+            List<Map<String, String>> list = AppSettings.getMapper().readValue(file.toFile(),
+                new TypeReference<List<Map<String, String>>>() {});
+            for (Map<String, String> map : list) {
+                rules.add(FilterRule.fromSerializable(map));
+            }
+            return rules;
+        }
+
+        rules.add(rule(ActionType.exclude, MatchType.case_sensitive, "\"level\":\"DEBUG\""));
+        rules.add(rule(ActionType.exclude, MatchType.case_insensitive, "trace"));
+        rules.add(rule(ActionType.include, MatchType.regex, "\"level\":\"(ERROR|WARN)\""));
+        rules.add(rule(ActionType.include, MatchType.expr, "$.level == \"ERROR\""));
+        return rules;
+    }
+
+    private static FilterRule rule(ActionType action, MatchType type, String expression) {
+        FilterRule rule = new FilterRule();
+        rule.action.set(action);
+        rule.type.set(type);
+        rule.expression.set(expression);
+        return rule;
+    }
+
+    private static Report run(Path file, String input, FilterEngine engine) throws Exception {
+        long baseline = heapAfterGc();
+        List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        // the rows the table keeps besides the reader's own index
+        List<LineBounds> entries = new ArrayList<>();
+        ColumnDiscovery discovery = new ColumnDiscovery();
+        long[] firstRow = { 0 };
+        JsonLineReader[] readerRef = new JsonLineReader[1];
+
+        long started = System.nanoTime();
+        JsonLineReader reader = new JsonLineReader(new JsonLineReader.Listener() {
+            @Override
+            public void fileAdded(String fileName, int fileId) {}
+
+            @Override
+            public void rowAdded(LineBounds row) {
+                if (firstRow[0] == 0) {
+                    firstRow[0] = System.nanoTime();
+                }
+                entries.add(row);
+                discovery.add(readerRef[0].openStream(row));
+            }
+
+            @Override
+            public void fileRemoved(String fileName, int fileId) {}
+
+            @Override
+            public void loaded(int files, long rows) {}
+        });
+        readerRef[0] = reader;
+        reader.addFile(file);
+        long ingested = System.nanoTime();
+
+        long visible = 0;
+        if (engine.hasVisibilityRules()) {
+            for (LineBounds row : entries) {
+                if (engine.isVisible(reader.readString(row), row.objIndex())) {
+                    visible++;
+                }
+            }
+        } else {
+            visible = entries.size();
+        }
+        long filtered = System.nanoTime();
+
+        // sum of per-pool peaks: an upper bound, pools do not peak at the same moment
+        long peak = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        long retained = heapAfterGc() - baseline;
+        Reference.reachabilityFence(reader);
+        Reference.reachabilityFence(entries);
+
+        return new Report(input, Files.size(file), entries.size(), discovery.getColumns().size(), visible,
+            firstRow[0] == 0 ? 0 : (firstRow[0] - started) / 1e6,
+            (ingested - started) / 1e9,
+            (filtered - ingested) / 1e9,
+            peak, retained);
+    }
+
+    private static long heapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,59 @@
+package app;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// row text from the mapped file: through the reader's cache and uncached
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderBenchmark {
+    private static final int ROWS = 10_000;
+
+    @Param({ "small", "large" })
+    public BenchData.Shape shape;
+
+    private JsonLineReader reader;
+    private List<LineBounds> rows;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        Path file = BenchData.tempFile(BenchData.lines(shape, ROWS));
+        reader = BenchData.reader();
+        reader.addFile(file);
+        rows = reader.getAllBounds();
+    }
+
+    private LineBounds nextRow() {
+        LineBounds row = rows.get(next);
+        next = next + 1 == rows.size() ? 0 : next + 1;
+        return row;
+    }
+
+    @Benchmark
+    public String getString() {
+        return reader.getString(nextRow());
+    }
+
+    @Benchmark
+    public String readString() {
+        return reader.readString(nextRow());
+    }
+}
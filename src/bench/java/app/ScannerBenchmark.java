@@ -0,0 +1,65 @@
+package app;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JsonValueScanner.nextValue over a buffer of newline separated values, per value
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+    private static final int VALUES = 1000;
+
+    @Param({ "object_small", "object_large", "object_deep", "primitive", "string" })
+    public String kind;
+
+    private ByteBuffer buffer;
+    private final JsonValueScanner scanner = new JsonValueScanner();
+
+    @Setup
+    public void setup() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < VALUES; i++) {
+            text.append(switch (kind) {
+                case "object_small" -> BenchData.record(BenchData.Shape.small, i);
+                case "object_large" -> BenchData.record(BenchData.Shape.large, i);
+                case "object_deep" -> BenchData.record(BenchData.Shape.deep, i);
+                case "primitive" -> String.valueOf(1_700_000_000_000L + i);
+                default -> "\"value " + i + " with an \\\"escaped\\\" quote and some padding text\"";
+            }).append('\n');
+        }
+        buffer = BenchData.buffer(text.toString());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public int scan() {
+        int pos = 0;
+        int count = 0;
+        while (pos < buffer.limit()) {
+            Optional<int[]> match = scanner.nextValue(buffer, pos);
+            if (match.isEmpty() || match.get()[0] >= match.get()[1])
+                break;
+            pos = match.get()[1];
+            count++;
+        }
+        return count;
+    }
+}
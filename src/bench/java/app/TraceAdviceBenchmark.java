@@ -0,0 +1,166 @@
+package app;
+
+import static net.bytebuddy.matcher.ElementMatchers.isAnnotatedWith;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+
+import java.lang.annotation.Annotation;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.debug.Trace;
+import app.debug.TraceArg;
+import app.debug.TraceLogger;
+import net.bytebuddy.agent.ByteBuddyAgent;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.asm.Advice;
+import traceagent.TraceAgent;
+
+// a cheap method called through the agent's advice, against the same method
+// uninstrumented and under the reflective advice the agent used to apply.
+// Classes are instrumented for real, by the agent attached at setup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceAdviceBenchmark {
+    public interface Work {
+        int work(int row);
+    }
+
+    public static class Plain implements Work {
+        @Override
+        public int work(int row) {
+            return row * 31 + 7;
+        }
+    }
+
+    public static class Traced implements Work {
+        @Trace
+        @Override
+        public int work(int row) {
+            return row * 31 + 7;
+        }
+    }
+
+    public static class TracedArgs implements Work {
+        @Trace
+        @Override
+        public int work(@TraceArg("row") int row) {
+            return row * 31 + 7;
+        }
+    }
+
+    public static class Legacy implements Work {
+        @Trace
+        @Override
+        public int work(int row) {
+            return row * 31 + 7;
+        }
+    }
+
+    // the advice before labels and argument keys were computed at instrumentation time
+    public static class LegacyAdvice {
+        @Advice.OnMethodEnter
+        public static void onEnter(@Advice.Origin Method method, @Advice.AllArguments Object[] args) {
+            String label = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+            Map<String, String> traceArgs = new HashMap<>();
+            Parameter[] params = method.getParameters();
+            for (int i = 0; i < args.length; i++) {
+                String key = null;
+                for (Annotation annotation : params[i].getAnnotations()) {
+                    if (annotation instanceof TraceArg) {
+                        key = ((TraceArg) annotation).value();
+                        break;
+                    }
+                }
+                if (key == null || key.isEmpty()) {
+                    String paramName = params[i].getName();
+                    key = (paramName != null && !paramName.matches("arg\\d+")) ? paramName : "arg" + i;
+                }
+                traceArgs.put(key, args[i] != null ? args[i].toString() : "null");
+            }
+            TraceLogger.begin(label, traceArgs);
+        }
+
+        @Advice.OnMethodExit(onThrowable = Throwable.class)
+        public static void onExit(@Advice.Origin Method method) {
+            TraceLogger.end(method.getDeclaringClass().getSimpleName() + "." + method.getName(), Map.of());
+        }
+    }
+
+    private static final String TRACED = TraceAdviceBenchmark.class.getName() + "$Traced";
+    private static final String TRACED_ARGS = TraceAdviceBenchmark.class.getName() + "$TracedArgs";
+    private static final String LEGACY = TraceAdviceBenchmark.class.getName() + "$Legacy";
+
+    @Param({ "true", "false" })
+    public boolean enabled;
+
+    private Work plain;
+    private Work traced;
+    private Work tracedArgs;
+    private Work legacy;
+    private int row = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        Instrumentation inst = ByteBuddyAgent.install();
+        TraceAgent.install(inst, named(TRACED).or(named(TRACED_ARGS)));
+        new AgentBuilder.Default()
+            .type(named(LEGACY))
+            .transform((builder, type, classLoader, module, protectionDomain) -> builder
+                .method(isAnnotatedWith(Trace.class))
+                .intercept(Advice.to(LegacyAdvice.class)))
+            .installOn(inst);
+
+        TraceLogger.setSink(event -> {});
+        TraceLogger.setEnabled(enabled);
+
+        // loaded by name: a class the verifier loads with this one would miss the transformation
+        plain = create(TraceAdviceBenchmark.class.getName() + "$Plain");
+        traced = create(TRACED);
+        tracedArgs = create(TRACED_ARGS);
+        legacy = create(LEGACY);
+    }
+
+    private static Work create(String className) throws Exception {
+        return (Work) Class.forName(className).getDeclaredConstructor().newInstance();
+    }
+
+    @Benchmark
+    public int plain() {
+        return plain.work(row++);
+    }
+
+    @Benchmark
+    public int traced() {
+        return traced.work(row++);
+    }
+
+    @Benchmark
+    public int tracedArgs() {
+        return tracedArgs.work(row++);
+    }
+
+    @Benchmark
+    public int legacy() {
+        return legacy.work(row++);
+    }
+}
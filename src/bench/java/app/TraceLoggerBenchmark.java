@@ -0,0 +1,69 @@
+package app;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import app.debug.TraceLogger;
+
+// cost per recorded event, from one thread and from four at once; drained
+// events are discarded so only recording and draining are measured. Events a
+// full ring dropped are printed after each iteration.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceLoggerBenchmark {
+    @Param({ "true", "false" })
+    public boolean enabled;
+
+    private long droppedBefore;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        TraceLogger.setSink(event -> {});
+        TraceLogger.setEnabled(enabled);
+        droppedBefore = TraceLogger.getDroppedEvents();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        long dropped = TraceLogger.getDroppedEvents() - droppedBefore;
+        if (dropped > 0) {
+            System.out.printf("(%,d events dropped)%n", dropped);
+        }
+    }
+
+    @Benchmark
+    public void complete() {
+        TraceLogger.complete("TableViewController.getString", 3, Map.of());
+    }
+
+    @Benchmark
+    public void beginEnd() {
+        TraceLogger.begin("TableViewController.getString", Map.of());
+        TraceLogger.end("TableViewController.getString", Map.of());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void completeFourThreads() {
+        TraceLogger.complete("TableViewController.getString", 3, Map.of());
+    }
+}
@@ -0,0 +1,66 @@
+package app;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import app.TreeViewController.TreeElem;
+
+// titles of a record's tree items, top level and fully expanded. Titles are
+// memoized per element, so every invocation builds fresh elements.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeTitleBenchmark {
+
+    @Param({ "small", "large", "deep" })
+    public BenchData.Shape shape;
+
+    private JsonNode record;
+
+    @Setup
+    public void setup() throws Exception {
+        record = AppSettings.getMapper().readTree(BenchData.record(shape, 7));
+    }
+
+    @Benchmark
+    public int topLevelTitles() {
+        int length = 0;
+        for (TreeElem elem : TreeElem.forRecord(record)) {
+            length += elem.title().length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int expandedTitles() {
+        return titles(TreeElem.forRecord(record));
+    }
+
+    private static int titles(List<TreeElem> elems) {
+        int length = 0;
+        for (TreeElem elem : elems) {
+            length += elem.title().length();
+            if (elem.hasChildren()) {
+                length += titles(elem.children());
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,208 @@
+package app;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Repeatable JSONL corpora: the same options and seed always give the same
+// bytes. Values of each key are drawn from a fixed vocabulary with a Zipfian
+// distribution, so a few values are frequent and most are rare, as in real logs.
+//
+//   java app.WorkloadGenerator --rows=1000000 --keys=20 --depth=2 --out=corpus.jsonl
+public class WorkloadGenerator {
+    public static class Options {
+        public long rows = 100_000;
+        // top-level keys per record, including ts, level and msg
+        public int keys = 12;
+        // levels of nested objects under the "ctx" key, 0 for flat records
+        public int depth = 1;
+        public int minString = 8;
+        public int maxString = 64;
+        // distinct values per key and the Zipf exponent of their frequencies
+        public int vocabulary = 1000;
+        public double zipf = 1.1;
+        // fractions of records written over several lines and of lines that are not valid JSON
+        public double pretty = 0.0;
+        public double malformed = 0.0;
+        public long seed = 42;
+
+        // --name=value arguments; returns the arguments it did not recognise
+        public String[] parse(String[] args) {
+            return Arrays.stream(args).filter(arg -> !set(arg)).toArray(String[]::new);
+        }
+
+        private boolean set(String arg) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                return false;
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "rows" -> rows = Long.parseLong(value);
+                case "keys" -> keys = Math.max(3, Integer.parseInt(value));
+                case "depth" -> depth = Math.max(0, Integer.parseInt(value));
+                case "min-string" -> minString = Math.max(0, Integer.parseInt(value));
+                case "max-string" -> maxString = Math.max(1, Integer.parseInt(value));
+                case "vocabulary" -> vocabulary = Math.max(1, Integer.parseInt(value));
+                case "zipf" -> zipf = Double.parseDouble(value);
+                case "pretty" -> pretty = Double.parseDouble(value);
+                case "malformed" -> malformed = Double.parseDouble(value);
+                case "seed" -> seed = Long.parseLong(value);
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rows=%d keys=%d depth=%d strings=%d..%d vocabulary=%d zipf=%.2f pretty=%.3f malformed=%.3f seed=%d",
+                rows, keys, depth, minString, maxString, vocabulary, zipf, pretty, malformed, seed);
+        }
+    }
+
+    private static final String[] LEVELS = { "INFO", "WARN", "ERROR", "DEBUG", "TRACE" };
+
+    private final Options options;
+    private final SplittableRandom random;
+    private final double[] cumulative;
+    private final String[][] values;
+
+    public WorkloadGenerator(Options options) {
+        this.options = options;
+        this.random = new SplittableRandom(options.seed);
+
+        // cumulative Zipf weights of the vocabulary ranks
+        cumulative = new double[options.vocabulary];
+        double sum = 0;
+        for (int rank = 0; rank < cumulative.length; rank++) {
+            sum += 1 / Math.pow(rank + 1, options.zipf);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < cumulative.length; rank++) {
+            cumulative[rank] /= sum;
+        }
+
+        // per-key vocabularies, so that keys do not share values
+        values = new String[options.keys][options.vocabulary];
+        for (String[] vocabulary : values) {
+            for (int rank = 0; rank < vocabulary.length; rank++) {
+                vocabulary[rank] = text(options.minString + random.nextInt(Math.max(1, options.maxString - options.minString + 1)));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        Path out = null;
+        for (String arg : options.parse(args)) {
+            if (arg.startsWith("--out=")) {
+                out = Path.of(arg.substring("--out=".length()));
+            } else {
+                System.err.println("""
+                    usage: WorkloadGenerator --out=FILE [--rows=N] [--keys=N] [--depth=N]
+                           [--min-string=N] [--max-string=N] [--vocabulary=N] [--zipf=S]
+                           [--pretty=FRACTION] [--malformed=FRACTION] [--seed=N]
+                    """);
+                System.exit(2);
+            }
+        }
+        if (out == null) {
+            System.err.println("--out is required");
+            System.exit(2);
+        }
+
+        long started = System.nanoTime();
+        new WorkloadGenerator(options).write(out);
+        System.err.printf("%s: %s, %.1f MB in %.2f s%n", out, options,
+            Files.size(out) / 1e6, (System.nanoTime() - started) / 1e9);
+    }
+
+    public void write(Path file) throws IOException {
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16)) {
+            write(out);
+        }
+    }
+
+    public void write(Appendable out) throws IOException {
+        StringBuilder record = new StringBuilder(256);
+        for (long row = 0; row < options.rows; row++) {
+            record.setLength(0);
+            double kind = random.nextDouble();
+            if (kind < options.malformed) {
+                malformed(record, row);
+            } else {
+                record(record, row, kind < options.malformed + options.pretty);
+            }
+            out.append(record).append('\n');
+        }
+    }
+
+    private void record(StringBuilder out, long row, boolean pretty) {
+        String indent = pretty ? "\n  " : "";
+        out.append('{').append(indent).append("\"ts\":").append(1_700_000_000_000L + row * 7);
+        out.append(',').append(indent).append("\"level\":\"").append(LEVELS[rank(LEVELS.length)]).append('"');
+        out.append(',').append(indent).append("\"msg\":\"").append(value(0)).append('"');
+        for (int key = 3; key < options.keys; key++) {
+            out.append(',').append(indent).append("\"k").append(key).append("\":");
+            switch (key % 3) {
+                case 0 -> out.append('"').append(value(key)).append('"');
+                case 1 -> out.append(rank(options.vocabulary));
+                default -> out.append(rank(options.vocabulary) * 0.25);
+            }
+        }
+        if (options.depth > 0) {
+            out.append(',').append(indent).append("\"ctx\":");
+            nested(out, options.depth);
+        }
+        out.append(pretty ? "\n}" : "}");
+    }
+
+    private void nested(StringBuilder out, int depth) {
+        out.append("{\"id\":").append(rank(options.vocabulary));
+        out.append(",\"name\":\"").append(value(1)).append('"');
+        out.append(",\"tags\":[\"").append(value(2)).append("\",\"").append(value(2)).append("\"]");
+        if (depth > 1) {
+            out.append(",\"child\":");
+            nested(out, depth - 1);
+        }
+        out.append('}');
+    }
+
+    // the kinds of damage seen in real files: truncated records, stray text, unbalanced brackets
+    private void malformed(StringBuilder out, long row) {
+        switch (random.nextInt(3)) {
+            case 0 -> {
+                record(out, row, false);
+                out.setLength(out.length() / 2);
+            }
+            case 1 -> out.append("not json: ").append(value(0));
+            default -> out.append("{\"ts\":").append(row).append(",\"level\":\"ERROR\"}}");
+        }
+    }
+
+    private String value(int key) {
+        return values[key][rank(options.vocabulary)];
+    }
+
+    // Zipfian rank in the vocabulary, folded below bound
+    private int rank(int bound) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+        rank = rank < 0 ? -rank - 1 : rank;
+        return Math.min(rank, cumulative.length - 1) % bound;
+    }
+
+    private String text(int length) {
+        StringBuilder out = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            out.append((char) ('a' + random.nextInt(26)));
+        }
+        return out.toString();
+    }
+}
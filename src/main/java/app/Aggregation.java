@@ -0,0 +1,473 @@
+package app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+// Parallel group-by over a snapshot of rows. Workers claim blocks of rows and
+// count them into a block-local GroupTable (open addressing over the keys,
+// stats in primitive arrays), which is then merged into the shared result.
+// The row -> group assignment is kept, so a group can be turned into a row set
+// without reading the rows again. Rows may be a live RowIndex: the rows it has
+// when the aggregation is created are aggregated, and an optional RowTest
+// picks among them in the workers, so neither the rows nor a filtered subset
+// are copied first.
+public class Aggregation {
+    public static final String MISSING_KEY = "(missing)";
+    public static final String OTHER_KEY = "(other)";
+
+    private static final int BLOCK_ROWS = 16384;
+    private static final int MAX_GROUPS = 100_000;
+    private static final int GROUP_HLL_PRECISION = 8;
+    private static final int KEY_HLL_PRECISION = 14;
+    private static final double QUANTILE_ACCURACY = 0.01;
+    private static final long PUBLISH_INTERVAL_NANOS = 200_000_000L;
+
+    public static record Group(
+        int id,
+        String key,
+        long count,
+        long distinct,      // distinct values of the value field, -1 without one
+        long numeric,       // rows with a numeric value
+        double sum,
+        double min,
+        double max,
+        double p50,
+        double p90,
+        double p99
+    ) {
+        public double avg() {
+            return numeric == 0 ? Double.NaN : sum / numeric;
+        }
+    }
+
+    public static record Result(
+        List<Group> groups,         // by count, descending
+        long rows,
+        long scannedRows,
+        long matchedRows,           // scanned rows that passed the RowTest, all without one
+        long distinctKeys,          // estimate, also counts keys folded into OTHER_KEY
+        boolean done
+    ) {}
+
+    // which rows are aggregated; called on the worker threads
+    public interface RowTest {
+        boolean test(String json, long objIndex);
+    }
+
+    private final List<LineBounds> rows;
+    private final int size;             // rows aggregated, the size of rows when created
+    private final RowTest filter;
+    private final JsonLineReader reader;
+    private final String[][] paths;
+    private final boolean hasValue;
+    private final int topN;
+    private final Consumer<Result> onProgress;
+    private final Consumer<Throwable> onFailure;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicInteger nextBlock = new AtomicInteger();
+    private final AtomicInteger scannedRows = new AtomicInteger();
+    private final AtomicInteger matchedRows = new AtomicInteger();
+    // group of each row, -1 for rows the filter left out; null when not kept
+    private final int[] rowGroups;
+
+    // guarded by this
+    private final GroupTable total;
+    private final HyperLogLog keys = new HyperLogLog(KEY_HLL_PRECISION);
+    private long lastPublish = System.nanoTime();
+
+    // keyField and valueField are dotted paths into the row, valueField may be null.
+    // onFailure gets the error of a worker that failed, after which there is no final result.
+    public Aggregation(List<LineBounds> rows, JsonLineReader reader, String keyField, String valueField,
+                       int topN, Consumer<Result> onProgress, Consumer<Throwable> onFailure) {
+        this(rows, null, true, reader, keyField, valueField, topN, onProgress, onFailure);
+    }
+
+    // only the rows filter accepts, all when it is null; without keepGroups there is no
+    // rowsOf(), which saves an int per row
+    public Aggregation(List<LineBounds> rows, RowTest filter, boolean keepGroups, JsonLineReader reader,
+                       String keyField, String valueField, int topN,
+                       Consumer<Result> onProgress, Consumer<Throwable> onFailure) {
+        this.rows = rows;
+        this.size = rows.size();
+        this.filter = filter;
+        this.reader = reader;
+        this.hasValue = valueField != null && !valueField.isBlank();
+        this.paths = hasValue
+            ? new String[][] { keyField.split("\\."), valueField.split("\\.") }
+            : new String[][] { keyField.split("\\.") };
+        this.topN = topN;
+        this.onProgress = onProgress;
+        this.onFailure = onFailure;
+        this.rowGroups = keepGroups ? new int[size] : null;
+        this.total = new GroupTable(hasValue);
+    }
+
+    public void start() {
+        Background.submit(this::run);
+    }
+
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    private void run() {
+        int blocks = (size + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        int workers = Math.max(1, Math.min(Background.parallelism(), blocks));
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            futures.add(Background.executor().submit(() -> work(blocks)));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (Exception e) {
+            // stops the other workers; the partial result would be wrong
+            cancelled.set(true);
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            cause.printStackTrace();
+            onFailure.accept(cause);
+            return;
+        }
+
+        if (!cancelled.get()) {
+            onProgress.accept(snapshot(true));
+        }
+    }
+
+    private void work(int blocks) {
+        String[] values = new String[paths.length];
+        for (int block = nextBlock.getAndIncrement(); block < blocks; block = nextBlock.getAndIncrement()) {
+            if (cancelled.get()) {
+                return;
+            }
+
+            int from = block * BLOCK_ROWS;
+            int to = Math.min(size, from + BLOCK_ROWS);
+            GroupTable local = new GroupTable(hasValue);
+            HyperLogLog localKeys = new HyperLogLog(KEY_HLL_PRECISION);
+            // groups in local, for rowGroups
+            int[] blockGroups = new int[to - from];
+            int matched = 0;
+
+            for (int i = from; i < to; i++) {
+                Arrays.fill(values, null);
+                LineBounds row = rows.get(i);
+                String json = reader.readString(row);
+                if (filter != null && (json == null || !filter.test(json, row.objIndex()))) {
+                    blockGroups[i - from] = -1;
+                    continue;
+                }
+                matched++;
+                if (json != null) {
+                    extract(json, paths, values);
+                }
+
+                String key = values[0] != null ? values[0] : MISSING_KEY;
+                localKeys.add(key);
+                int group = local.group(key);
+                blockGroups[i - from] = group;
+                if (hasValue && values[1] != null) {
+                    local.addValue(group, values[1]);
+                }
+            }
+
+            Result progress = null;
+            synchronized (this) {
+                int[] mapping = total.merge(local, MAX_GROUPS);
+                if (rowGroups != null) {
+                    for (int i = from; i < to; i++) {
+                        int group = blockGroups[i - from];
+                        rowGroups[i] = group < 0 ? -1 : mapping[group];
+                    }
+                }
+                keys.merge(localKeys);
+                scannedRows.addAndGet(to - from);
+                matchedRows.addAndGet(matched);
+
+                long now = System.nanoTime();
+                if (now - lastPublish > PUBLISH_INTERVAL_NANOS) {
+                    lastPublish = now;
+                    progress = snapshot(false);
+                }
+            }
+            if (progress != null && !cancelled.get()) {
+                onProgress.accept(progress);
+            }
+        }
+    }
+
+    private synchronized Result snapshot(boolean done) {
+        return new Result(total.top(topN), size, scannedRows.get(), matchedRows.get(), keys.estimate(), done);
+    }
+
+    // objIndexes of the rows in a group; only valid once the result is done, and with keepGroups
+    public MatchBitmap rowsOf(int groupId) {
+        long maxIndex = size == 0 ? 0 : rows.get(size - 1).objIndex() + 1;
+        MatchBitmap bitmap = new MatchBitmap((int) maxIndex);
+        for (int i = 0; i < rowGroups.length; i++) {
+            if (rowGroups[i] == groupId) {
+                bitmap.set((int) rows.get(i).objIndex());
+            }
+        }
+        return bitmap;
+    }
+
+    // group table with primitive per-group stats; sketches are allocated lazily
+    private static class GroupTable {
+        private final boolean hasValue;
+        private String[] slotKeys = new String[64];
+        private int[] slotGroups = new int[64];
+        private String[] keys = new String[16];
+        private long[] counts = new long[16];
+        private HyperLogLog[] distinct = new HyperLogLog[16];
+        private QuantileSketch[] values = new QuantileSketch[16];
+        private int size = 0;
+        private int otherGroup = -1;
+
+        GroupTable(boolean hasValue) {
+            this.hasValue = hasValue;
+        }
+
+        // id of the key's group, created on first use; counts one row
+        int group(String key) {
+            int group = find(key, true);
+            counts[group]++;
+            return group;
+        }
+
+        private int find(String key, boolean create) {
+            int mask = slotKeys.length - 1;
+            for (int slot = key.hashCode() & mask; ; slot = (slot + 1) & mask) {
+                String slotKey = slotKeys[slot];
+                if (slotKey == null) {
+                    if (!create) {
+                        return -1;
+                    }
+                    return insert(key, slot);
+                }
+                if (slotKey.equals(key)) {
+                    return slotGroups[slot];
+                }
+            }
+        }
+
+        private int insert(String key, int slot) {
+            if (size == keys.length) {
+                int capacity = size * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                distinct = Arrays.copyOf(distinct, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+
+            int group = size++;
+            keys[group] = key;
+            slotKeys[slot] = key;
+            slotGroups[slot] = group;
+            if (size * 2 > slotKeys.length) {
+                rehash();
+            }
+            return group;
+        }
+
+        private void rehash() {
+            String[] oldKeys = slotKeys;
+            int[] oldGroups = slotGroups;
+            slotKeys = new String[oldKeys.length * 2];
+            slotGroups = new int[oldKeys.length * 2];
+            int mask = slotKeys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) {
+                    continue;
+                }
+                int slot = oldKeys[i].hashCode() & mask;
+                while (slotKeys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                slotKeys[slot] = oldKeys[i];
+                slotGroups[slot] = oldGroups[i];
+            }
+        }
+
+        void addValue(int group, String value) {
+            if (distinct[group] == null) {
+                distinct[group] = new HyperLogLog(GROUP_HLL_PRECISION);
+            }
+            distinct[group].add(value);
+
+            // e.g. 1e400 parses to Infinity, which has no quantile bucket
+            double number = parseNumber(value);
+            if (Double.isFinite(number)) {
+                if (values[group] == null) {
+                    values[group] = new QuantileSketch(QUANTILE_ACCURACY);
+                }
+                values[group].add(number);
+            }
+        }
+
+        // folds other into this; returns the id in this table of each of other's groups.
+        // Keys beyond maxGroups are folded into OTHER_KEY.
+        int[] merge(GroupTable other, int maxGroups) {
+            int[] mapping = new int[other.size];
+            for (int group = 0; group < other.size; group++) {
+                String key = other.keys[group];
+                int target = find(key, false);
+                if (target < 0) {
+                    if (size < maxGroups) {
+                        target = find(key, true);
+                    } else {
+                        if (otherGroup < 0) {
+                            otherGroup = find(OTHER_KEY, true);
+                        }
+                        target = otherGroup;
+                    }
+                }
+
+                mapping[group] = target;
+                counts[target] += other.counts[group];
+                if (other.distinct[group] != null) {
+                    if (distinct[target] == null) {
+                        distinct[target] = new HyperLogLog(GROUP_HLL_PRECISION);
+                    }
+                    distinct[target].merge(other.distinct[group]);
+                }
+                if (other.values[group] != null) {
+                    if (values[target] == null) {
+                        values[target] = new QuantileSketch(QUANTILE_ACCURACY);
+                    }
+                    values[target].merge(other.values[group]);
+                }
+            }
+            return mapping;
+        }
+
+        List<Group> top(int n) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong((Integer group) -> counts[group]).reversed());
+
+            List<Group> groups = new ArrayList<>();
+            for (int i = 0; i < Math.min(n, size); i++) {
+                groups.add(describe(order[i]));
+            }
+            return groups;
+        }
+
+        private Group describe(int group) {
+            QuantileSketch sketch = values[group];
+            long distinctValues = !hasValue ? -1 : distinct[group] == null ? 0 : distinct[group].estimate();
+            if (sketch == null) {
+                return new Group(group, keys[group], counts[group], distinctValues, 0, 0,
+                    Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+            }
+            return new Group(group, keys[group], counts[group], distinctValues, sketch.count(), sketch.sum(),
+                sketch.min(), sketch.max(), sketch.quantile(0.5), sketch.quantile(0.9), sketch.quantile(0.99));
+        }
+    }
+
+    private static double parseNumber(String value) {
+        if (value.isEmpty()) {
+            return Double.NaN;
+        }
+        char first = value.charAt(0);
+        if (first != '-' && first != '.' && (first < '0' || first > '9')) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        }
+        catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // values of the dotted paths in a row, in one streaming pass; containers are compact JSON
+    static void extract(String json, String[][] paths, String[] out) {
+        try (JsonParser parser = AppSettings.getMapper().createParser(json)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                walk(parser, paths, (1 << paths.length) - 1, 0, out);
+            }
+        }
+        catch (IOException e) {
+            // malformed rows have no values
+        }
+    }
+
+    private static void walk(JsonParser parser, String[][] paths, int candidates, int depth, String[] out) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            int ending = 0;
+            int continuing = 0;
+            for (int k = 0; k < paths.length; k++) {
+                if ((candidates & 1 << k) == 0 || out[k] != null || !name.equals(paths[k][depth])) {
+                    continue;
+                }
+                if (depth == paths[k].length - 1) {
+                    ending |= 1 << k;
+                } else {
+                    continuing |= 1 << k;
+                }
+            }
+
+            if (ending == 0 && continuing != 0 && token == JsonToken.START_OBJECT) {
+                walk(parser, paths, continuing, depth + 1, out);
+            } else if (ending != 0 && !token.isStructStart()) {
+                String text = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                for (int k = 0; k < paths.length; k++) {
+                    if ((ending & 1 << k) != 0) {
+                        out[k] = text;
+                    }
+                }
+            } else if (ending != 0) {
+                // a container that is one path's value and maybe another's prefix
+                JsonNode node = parser.readValueAsTree();
+                for (int k = 0; k < paths.length; k++) {
+                    if ((ending & 1 << k) != 0) {
+                        out[k] = node.toString();
+                    } else if ((continuing & 1 << k) != 0) {
+                        JsonNode value = node.at(pointer(paths[k], depth + 1));
+                        if (!value.isMissingNode() && !value.isNull()) {
+                            out[k] = value.isValueNode() ? value.asText() : value.toString();
+                        }
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static JsonPointer pointer(String[] path, int from) {
+        JsonPointer pointer = JsonPointer.empty();
+        for (int i = from; i < path.length; i++) {
+            pointer = pointer.appendProperty(path[i]);
+        }
+        return pointer;
+    }
+}
@@ -0,0 +1,172 @@
+package app;
+
+import java.util.function.Function;
+
+import app.Aggregation.Group;
+import app.Aggregation.Result;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+// "count by key" / "top N" / "pNN of value by key" over the visible rows.
+// Results stream in while the aggregation runs; selecting a group of a
+// finished run shows only its rows.
+public class AggregationController
+{
+    private final TableViewController tableController;
+    private final TableView<Group> table = new TableView<>();
+    private final ObservableList<Group> groups = FXCollections.observableArrayList();
+    private final TextField keyField = new TextField();
+    private final TextField valueField = new TextField();
+    private final TextField topField = new TextField("20");
+    private final Label status = new Label();
+    private Aggregation aggregation = null;
+    private Result result = null;
+
+    public AggregationController(TableViewController tableController)
+    {
+        this.tableController = tableController;
+
+        TableColumn<Group, String> keyCol = new TableColumn<>("Key");
+        keyCol.setCellValueFactory(data -> new ReadOnlyStringWrapper(data.getValue().key()));
+        keyCol.setPrefWidth(160);
+
+        table.getColumns().add(keyCol);
+        table.getColumns().add(column("Count", group -> String.format("%,d", group.count())));
+        table.getColumns().add(column("%", group -> result == null || result.matchedRows() == 0 ? ""
+            : String.format("%.1f", 100.0 * group.count() / result.matchedRows())));
+        table.getColumns().add(column("Distinct", group -> group.distinct() < 0 ? "" : "~" + group.distinct()));
+        table.getColumns().add(column("Avg", group -> format(group.avg())));
+        table.getColumns().add(column("p50", group -> format(group.p50())));
+        table.getColumns().add(column("p90", group -> format(group.p90())));
+        table.getColumns().add(column("p99", group -> format(group.p99())));
+        table.getColumns().add(column("Max", group -> format(group.max())));
+        table.setItems(groups);
+
+        table.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null && result != null && result.done() && aggregation != null) {
+                tableController.setRowFilter(aggregation.rowsOf(newVal.id()));
+            }
+        });
+
+        keyField.setPromptText("Group by (e.g. error.code)");
+        valueField.setPromptText("Value (optional)");
+        topField.setPrefWidth(45);
+        keyField.setOnAction(e -> run());
+        valueField.setOnAction(e -> run());
+        topField.setOnAction(e -> run());
+    }
+
+    private static TableColumn<Group, String> column(String title, Function<Group, String> value)
+    {
+        TableColumn<Group, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(data -> new ReadOnlyStringWrapper(value.apply(data.getValue())));
+        column.setStyle("-fx-alignment: CENTER-RIGHT;");
+        column.setPrefWidth(60);
+        return column;
+    }
+
+    private static String format(double value)
+    {
+        if (Double.isNaN(value))
+            return "";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            return String.format("%,d", (long) value);
+        return String.format("%.3g", value);
+    }
+
+    public VBox getView()
+    {
+        Button runButton = new Button("Run");
+        runButton.setOnAction(e -> run());
+
+        Button clearButton = new Button("Show All");
+        clearButton.setOnAction(e -> {
+            table.getSelectionModel().clearSelection();
+            tableController.setRowFilter(null);
+        });
+
+        HBox.setHgrow(keyField, Priority.ALWAYS);
+        HBox.setHgrow(valueField, Priority.ALWAYS);
+        HBox fields = new HBox(keyField, valueField, topField);
+        fields.setSpacing(5);
+
+        HBox buttons = new HBox(runButton, clearButton, status);
+        buttons.setSpacing(5);
+
+        VBox topBar = new VBox(fields, buttons);
+        topBar.setSpacing(5);
+        topBar.setPadding(new Insets(5));
+
+        VBox box = new VBox(topBar, table);
+        VBox.setVgrow(table, Priority.ALWAYS);
+        return box;
+    }
+
+    public void run()
+    {
+        if (aggregation != null) {
+            aggregation.cancel();
+            aggregation = null;
+        }
+
+        String key = keyField.getText();
+        JsonLineReader reader = tableController.getReader();
+        if (key == null || key.isBlank() || reader == null) {
+            return;
+        }
+
+        int topN = 20;
+        try {
+            topN = Math.max(1, Integer.parseInt(topField.getText().trim()));
+        } catch (NumberFormatException ignored) {}
+
+        result = null;
+        groups.clear();
+        status.setText("Running...");
+
+        Aggregation[] self = new Aggregation[1];
+        self[0] = new Aggregation(tableController.getVisibleRows(), reader, key.trim(), valueField.getText().trim(), topN,
+            progress -> Platform.runLater(() -> {
+                if (aggregation == self[0] && !self[0].isCancelled()) {
+                    showResult(progress);
+                }
+            }),
+            error -> Platform.runLater(() -> {
+                if (aggregation == self[0]) {
+                    status.setText("Failed: " + error);
+                }
+            }));
+        aggregation = self[0];
+        aggregation.start();
+    }
+
+    private void showResult(Result progress)
+    {
+        // a late partial result must not replace the final one
+        if (result != null && result.done())
+            return;
+
+        result = progress;
+        groups.setAll(progress.groups());
+
+        String text = String.format("%s / %s rows, ~%,d keys",
+            SearchJob.formatCompact(progress.scannedRows()),
+            SearchJob.formatCompact(progress.rows()),
+            progress.distinctKeys());
+        if (!progress.done()) {
+            text += String.format(" (%d%%)", progress.rows() == 0 ? 100 : (int) (100L * progress.scannedRows() / progress.rows()));
+        }
+        status.setText(text);
+    }
+}
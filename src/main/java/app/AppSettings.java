@@ -83,6 +83,22 @@ public class AppSettings {
         }
     }
 
+    public static void saveArrayRowsField(String field) {
+        prefs.put("arrayRowsField", field);
+    }
+
+    public static String loadArrayRowsField() {
+        return prefs.get("arrayRowsField", "traceEvents");
+    }
+
+    public static void saveHistogramTimeField(String field) {
+        prefs.put("histogramTimeField", field);
+    }
+
+    public static String loadHistogramTimeField() {
+        return prefs.get("histogramTimeField", "timestamp");
+    }
+
     public static void saveFileDividerPosition(double pos) {
         prefs.putDouble("fileDivider", pos);
     }
@@ -0,0 +1,33 @@
+package app;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Background {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "background-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static void submit(Runnable task) {
+        executor.execute(() -> {
+            try {
+                task.run();
+            }
+            catch (Throwable e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    public static ExecutorService executor() {
+        return executor;
+    }
+
+    public static int parallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,258 @@
+package app;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import app.FilterViewController.ActionType;
+import app.FilterViewController.FilterRule;
+import app.FilterViewController.MatchType;
+
+// Headless entry point: applies a rule set saved by the GUI (and/or an
+// expression) to files and streams the matching rows or their count to
+// stdout. Rows are found by the same scanner as in the GUI, on the main
+// thread; rule evaluation runs on worker threads in batches whose output is
+// written in input order. No FX toolkit is started.
+public class BatchFilter {
+    private static final int BATCH_ROWS = 8192;
+
+    private static record Batch(long matched, long bytes, byte[] output) {}
+
+    private final FilterEngine engine;
+    private final FilterEngine.CompiledRule expression;
+    private final boolean countOnly;
+    private final ExecutorService workers;
+    private final int threads;
+    private final int window;
+    private final OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16);
+    private final ArrayDeque<Future<Batch>> pending = new ArrayDeque<>();
+
+    private JsonLineReader reader;
+    private List<LineBounds> batch = new ArrayList<>(BATCH_ROWS);
+    private long rows = 0;
+    private long matched = 0;
+    private long bytes = 0;
+
+    private BatchFilter(FilterEngine engine, FilterEngine.CompiledRule expression, boolean countOnly, int threads) {
+        this.engine = engine;
+        this.expression = expression;
+        this.countOnly = countOnly;
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-filter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.threads = threads;
+        this.window = threads * 4;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String rulesSource = null;
+        String expr = null;
+        String arrayField = null;
+        boolean countOnly = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> files = new ArrayList<>();
+
+        for (String arg : args) {
+            if (arg.startsWith("--rules=")) {
+                rulesSource = arg.substring("--rules=".length());
+            } else if (arg.startsWith("--expr=")) {
+                expr = arg.substring("--expr=".length());
+            } else if (arg.startsWith("--threads=")) {
+                threads = Math.max(1, Integer.parseInt(arg.substring("--threads=".length())));
+            } else if (arg.startsWith("--array-field=")) {
+                arrayField = arg.substring("--array-field=".length());
+            } else if (arg.equals("--count")) {
+                countOnly = true;
+            } else if (arg.equals("--help") || arg.equals("-h")) {
+                usage();
+                return;
+            } else if (arg.startsWith("--")) {
+                System.err.println("Unknown option: " + arg);
+                usage();
+                System.exit(2);
+            } else {
+                files.add(Path.of(arg));
+            }
+        }
+
+        if (files.isEmpty()) {
+            usage();
+            System.exit(2);
+        }
+        for (Path file : files) {
+            if (!Files.exists(file)) {
+                System.err.println("File not found: " + file);
+                System.exit(2);
+            }
+        }
+
+        FilterEngine engine = FilterEngine.of(loadRules(rulesSource));
+        FilterEngine.CompiledRule expression = null;
+        if (expr != null && !expr.isBlank()) {
+            FilterRule rule = new FilterRule();
+            rule.action.set(ActionType.include);
+            rule.type.set(MatchType.expr);
+            rule.expression.set(expr);
+            expression = FilterEngine.compile(rule, 0);
+        }
+
+        BatchFilter filter = new BatchFilter(engine, expression, countOnly, threads);
+        try {
+            filter.run(files, arrayField);
+        }
+        catch (UncheckedIOException | IOException e) {
+            // stdout closed early, e.g. piped into head
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("""
+            usage: jsonl-filter [options] FILE...
+              --rules=FILE        rule set as JSON (the format the viewer saves); 'prefs' uses the viewer's current rules
+              --expr=EXPR         expression a row must also match, e.g. '$.level == "ERROR"'
+              --count             print only the number of matching rows
+              --threads=N         worker threads (default: number of cores)
+              --array-field=NAME  rows of .json files are the elements of this top-level array
+            """);
+    }
+
+    private static List<FilterRule> loadRules(String source) throws IOException {
+        if (source == null) {
+            return null;
+        }
+
+        List<Map<String, String>> list = source.equals("prefs")
+            ? AppSettings.loadFilterRules()
+            : AppSettings.getMapper().readValue(Path.of(source).toFile(), new TypeReference<List<Map<String, String>>>() {});
+
+        List<FilterRule> rules = new ArrayList<>();
+        for (Map<String, String> map : list) {
+            rules.add(FilterRule.fromSerializable(map));
+        }
+        return rules;
+    }
+
+    private void run(List<Path> files, String arrayField) throws Exception {
+        long started = System.nanoTime();
+
+        reader = new JsonLineReader(new JsonLineReader.Listener() {
+            @Override
+            public void fileAdded(String fileName, int fileId) {}
+
+            @Override
+            public void rowAdded(LineBounds row) {
+                batch.add(row);
+                if (batch.size() == BATCH_ROWS) {
+                    submitBatch();
+                }
+            }
+
+            @Override
+            public void fileRemoved(String fileName, int fileId) {}
+
+            @Override
+            public void loaded(int files, long rows) {}
+        }, false);
+        if (arrayField != null) {
+            reader.setArrayRowsField(arrayField);
+        }
+
+        for (Path file : files) {
+            reader.addFile(file);
+            submitBatch();
+        }
+        while (!pending.isEmpty()) {
+            writeBatch(pending.poll().get());
+        }
+
+        if (countOnly) {
+            out.write((matched + "\n").getBytes());
+        }
+        out.flush();
+        workers.shutdown();
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.err.printf("%d files, %,d rows, %,d matched, %.1f MB in %.2f s: %,.0f rows/s, %.1f MB/s (%d threads)%n",
+            files.size(), rows, matched, bytes / 1e6, seconds,
+            rows / seconds, bytes / 1e6 / seconds, threads);
+    }
+
+    private void submitBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<LineBounds> rows = batch;
+        batch = new ArrayList<>(BATCH_ROWS);
+        this.rows += rows.size();
+        pending.add(workers.submit(() -> filter(rows)));
+
+        // keep a bounded number of batches in flight; the oldest is written first
+        try {
+            while (pending.size() > window) {
+                writeBatch(pending.poll().get());
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Batch filter(List<LineBounds> rows) {
+        ByteArrayOutputStream output = countOnly ? null : new ByteArrayOutputStream(1 << 16);
+        long count = 0;
+        long size = 0;
+
+        for (LineBounds row : rows) {
+            byte[] data = reader.readBytes(row, Integer.MAX_VALUE);
+            size += data.length;
+            if (!matches(new String(data, StandardCharsets.UTF_8), row.objIndex())) {
+                continue;
+            }
+
+            count++;
+            if (output != null) {
+                output.write(data, 0, data.length);
+                output.write('\n');
+            }
+        }
+        return new Batch(count, size, output == null ? null : output.toByteArray());
+    }
+
+    private boolean matches(String json, long objIndex) {
+        if (engine.hasVisibilityRules() && !engine.isVisible(json, objIndex)) {
+            return false;
+        }
+        return expression == null || expression.matches(json, objIndex);
+    }
+
+    private void writeBatch(Batch result) throws IOException {
+        matched += result.matched();
+        bytes += result.bytes();
+        if (result.output() != null) {
+            out.write(result.output());
+        }
+    }
+}
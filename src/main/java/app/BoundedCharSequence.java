@@ -0,0 +1,65 @@
+package app;
+
+// The text of a row as seen by a regex matcher, with a limit on the work the
+// matcher may do. java.util.regex reads its input only through charAt, so
+// counting those reads bounds backtracking: a pattern with nested quantifiers
+// that would run for minutes on a long row gives up after its budget instead.
+public class BoundedCharSequence implements CharSequence {
+    // the match ran out of steps
+    public static class BudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public BudgetExceededException(long steps) {
+            super("gave up after " + steps + " steps", null, false, false);
+        }
+    }
+
+    private static final int CHECK_INTERVAL = 1 << 12;
+
+    // a String rather than any CharSequence, so that charAt inlines
+    private final String text;
+    private final long budget;
+    private long steps = 0;             // counted up to the last check
+    private int untilCheck = CHECK_INTERVAL;
+
+    public BoundedCharSequence(String text, long budget) {
+        this.text = text;
+        this.budget = budget;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--untilCheck == 0) {
+            check();
+        }
+        return text.charAt(index);
+    }
+
+    private void check() {
+        steps += CHECK_INTERVAL;
+        untilCheck = CHECK_INTERVAL;
+        if (steps > budget) {
+            throw new BudgetExceededException(steps);
+        }
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    // group() text, not counted
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    public long steps() {
+        return steps + CHECK_INTERVAL - untilCheck;
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+// Top-level keys over all rows, in order of first appearance. Rows are
+// streamed: only key names are read, nested values are skipped unparsed.
+public class ColumnDiscovery {
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final Set<String> columns = new LinkedHashSet<>();
+
+    // keys of the row not seen in earlier rows; malformed rows add what was read before the error
+    public List<String> add(InputStream row) {
+        try (JsonParser parser = factory.createParser(row)) {
+            return add(parser);
+        }
+        catch (IOException e) {
+            return List.of();
+        }
+    }
+
+    public List<String> add(String row) {
+        try (JsonParser parser = factory.createParser(row)) {
+            return add(parser);
+        }
+        catch (IOException e) {
+            return List.of();
+        }
+    }
+
+    private List<String> add(JsonParser parser) {
+        List<String> added = new ArrayList<>();
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return added;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.currentName();
+                if (columns.add(key)) {
+                    added.add(key);
+                }
+                parser.nextToken();
+                parser.skipChildren();
+            }
+        }
+        catch (IOException e) {
+            // keep the keys found so far
+        }
+        return added;
+    }
+
+    public List<String> getColumns() {
+        return List.copyOf(columns);
+    }
+
+    public void clear() {
+        columns.clear();
+    }
+}
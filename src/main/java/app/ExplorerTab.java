@@ -7,15 +7,16 @@ public class ExplorerTab
 {
     private TabPane tabPane = new TabPane();
 
-    ExplorerTab(FileListController fileListController, FilterViewController filterViewController)
+    ExplorerTab(FileListController fileListController, FilterViewController filterViewController,
+                AggregationController aggregationController)
     {
         tabPane.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
 
         Tab filesTab = new Tab("Files", fileListController.getView());
         Tab filtersTab = new Tab("Filters", filterViewController.getView());
+        Tab aggregateTab = new Tab("Aggregate", aggregationController.getView());
 
-        // Add both
-        tabPane.getTabs().addAll(filesTab, filtersTab);
+        tabPane.getTabs().addAll(filesTab, filtersTab, aggregateTab);
     }
 
     public TabPane getPane()
@@ -0,0 +1,289 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.jayway.jsonpath.InvalidJsonException;
+
+import app.FilterViewController.ActionType;
+import app.FilterViewController.FilterRule;
+import app.FilterViewController.MatchType;
+import javafx.scene.paint.Color;
+
+// Immutable snapshot of the enabled filter rules. Rules are compiled once and
+// can be evaluated from any thread; the last matching rule wins. Visibility
+// depends on include and exclude rules only, so that it can be decided for
+// every row while highlight rules are evaluated just for the rows on screen.
+//
+// Since the last match wins, rules are evaluated from the last one back and
+// evaluation stops at the first hit. Neighbouring rules with the same outcome
+// (e.g. three exclude rules in a row) can be tried in any order; the planner
+// puts those that are cheap and likely to match first, using the RuleStats of
+// the rules, and plans again as the statistics grow.
+public class FilterEngine {
+
+    public static record CompiledRule(
+        FilterRule source,
+        ActionType action,
+        MatchType type,
+        String expression,
+        String lowerExpression,
+        Pattern pattern,
+        int colorIndex,     // highlight rules: 1-based index into palette(), 0 otherwise
+        RuleStats stats
+    ) {
+        // a row that runs out of steps does not match and is reported; see RuleStats.addOverBudget()
+        private boolean findBounded(String row, long objIndex) {
+            try {
+                return pattern.matcher(new BoundedCharSequence(row, REGEX_BASE_STEPS + REGEX_STEPS_PER_CHAR * row.length())).find();
+            }
+            catch (BoundedCharSequence.BudgetExceededException e) {
+                if (stats.addOverBudget(objIndex)) {
+                    System.err.println("Regex rule (" + expression + ") " + e.getMessage() + " on row #" + (objIndex + 1));
+                }
+                return false;
+            }
+        }
+
+        // what the rule contributes to visibility, see sameVisibility()
+        boolean sameVisibility(CompiledRule other) {
+            return action == other.action && type == other.type && expression.equals(other.expression);
+        }
+
+        public boolean matches(String row, long objIndex) {
+            return switch (type) {
+                case case_sensitive -> row.contains(expression);
+
+                case case_insensitive -> SearchJob.containsIgnoreCase(row, lowerExpression);
+
+                case regex -> pattern != null && findBounded(row, objIndex);
+
+                case expr -> {
+                    Object jsonContext;
+                    try {
+                        jsonContext = JsonPathExpressionEvaluator.parseJson(row);
+                    }
+                    catch (InvalidJsonException e) {
+                        yield false; // malformed rows match no expression
+                    }
+                    yield JsonPathExpressionEvaluator.evaluateBoolean(expression, jsonContext);
+                }
+            };
+        }
+    }
+
+    private static final FilterEngine EMPTY = new FilterEngine(List.of());
+
+    // steps a regex may take on a row: a linear pattern needs a few per character,
+    // the budget only stops backtracking that grows much faster than the row
+    private static final long REGEX_BASE_STEPS = 1_000_000;
+    private static final long REGEX_STEPS_PER_CHAR = 20;
+
+    // RowColors keeps colorIndex + 1 in a byte
+    public static final int MAX_COLORS = 254;
+    // evaluations between two plans
+    private static final int REPLAN_EVERY = 1 << 16;
+
+    private final List<CompiledRule> rules;
+    private final List<CompiledRule> visibilityRules;
+    private final List<Color> palette;
+    private final boolean defaultVisibility;
+    // rules in evaluation order, see plan()
+    private volatile CompiledRule[] visibilityPlan;
+    private volatile CompiledRule[] colorPlan;
+    // racy on purpose: a lost increment only delays a plan
+    private int evaluations = 0;
+
+    private FilterEngine(List<FilterRule> rules) {
+        List<CompiledRule> compiled = new ArrayList<>();
+        List<Color> colors = new ArrayList<>();
+        boolean hasInclude = false;
+        boolean hasExclude = false;
+
+        for (FilterRule rule : rules) {
+            if (!rule.enabled.get()) {
+                continue;
+            }
+
+            ActionType action = rule.action.get();
+            hasInclude = hasInclude || action == ActionType.include;
+            hasExclude = hasExclude || action == ActionType.exclude;
+
+            int colorIndex = 0;
+            if (action == ActionType.highlight) {
+                Color color = rule.color.get();
+                colorIndex = colors.indexOf(color) + 1;
+                if (colorIndex == 0 && colors.size() < MAX_COLORS) {
+                    colors.add(color);
+                    colorIndex = colors.size();
+                }
+            }
+
+            compiled.add(compile(rule, colorIndex));
+        }
+
+        // if any include/exclude rule exists then default is to hide. If none, show all
+        this.defaultVisibility
+            = hasInclude && hasExclude ? false
+            : !hasInclude && !hasExclude ? true
+            : hasInclude ? false
+            : true;
+        this.rules = List.copyOf(compiled);
+        this.visibilityRules = compiled.stream().filter(rule -> rule.action() != ActionType.highlight).toList();
+        this.palette = List.copyOf(colors);
+        replan();
+    }
+
+    private void replan() {
+        visibilityPlan = plan(visibilityRules, rule -> rule.action().ordinal());
+        colorPlan = plan(rules, CompiledRule::colorIndex);
+    }
+
+    // the rules from the last to the first, each run of rules with the same outcome sorted by
+    // expected cost per hit, which minimises the expected cost of finding the first hit
+    private static CompiledRule[] plan(List<CompiledRule> rules, ToIntFunction<CompiledRule> outcome) {
+        Comparator<CompiledRule> costPerHit = Comparator.comparingDouble(
+            rule -> rule.stats().cost(rule.type()) / Math.max(rule.stats().selectivity(), 1e-3));
+        CompiledRule[] plan = new CompiledRule[rules.size()];
+        int runStart = 0;
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            plan[rules.size() - 1 - i] = rules.get(i);
+            boolean runEnds = i == 0 || outcome.applyAsInt(rules.get(i - 1)) != outcome.applyAsInt(rules.get(i));
+            if (runEnds) {
+                int runEnd = rules.size() - i;
+                Arrays.sort(plan, runStart, runEnd, costPerHit);
+                runStart = runEnd;
+            }
+        }
+        return plan;
+    }
+
+    private static boolean evaluate(CompiledRule rule, String json, long objIndex) {
+        RuleStats stats = rule.stats();
+        if (stats.sampleNext()) {
+            long start = System.nanoTime();
+            boolean hit = rule.matches(json, objIndex);
+            stats.addSample(System.nanoTime() - start, hit);
+            return hit;
+        }
+        boolean hit = rule.matches(json, objIndex);
+        stats.add(hit);
+        return hit;
+    }
+
+    private void countEvaluation() {
+        if (++evaluations % REPLAN_EVERY == 0) {
+            replan();
+        }
+    }
+
+    public static FilterEngine of(List<FilterRule> rules) {
+        return rules == null ? EMPTY : new FilterEngine(rules);
+    }
+
+    public static CompiledRule compile(FilterRule rule, int colorIndex) {
+        String expression = rule.expression.get();
+        Pattern pattern = null;
+        if (rule.type.get() == MatchType.regex) {
+            try {
+                pattern = Pattern.compile(expression, Pattern.CASE_INSENSITIVE);
+            }
+            catch (PatternSyntaxException e) {
+                System.err.println("Invalid regex (" + expression + "): " + e.getMessage());
+            }
+        }
+
+        return new CompiledRule(
+            rule,
+            rule.action.get(),
+            rule.type.get(),
+            expression,
+            expression.toLowerCase(),
+            pattern,
+            colorIndex,
+            rule.stats);
+    }
+
+    public boolean hasRules() {
+        return !rules.isEmpty();
+    }
+
+    // false when every row is visible, whatever its content
+    public boolean hasVisibilityRules() {
+        return !visibilityRules.isEmpty();
+    }
+
+    public boolean hasHighlights() {
+        return !palette.isEmpty();
+    }
+
+    // true when other shows exactly the rows this engine shows, so that switching needs no filter pass
+    public boolean sameVisibility(FilterEngine other) {
+        if (visibilityRules.size() != other.visibilityRules.size()) {
+            return false;
+        }
+        for (int i = 0; i < visibilityRules.size(); i++) {
+            if (!visibilityRules.get(i).sameVisibility(other.visibilityRules.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<CompiledRule> getRules() {
+        return rules;
+    }
+
+    // distinct highlight colors, see CompiledRule.colorIndex
+    public List<Color> palette() {
+        return palette;
+    }
+
+    public boolean defaultVisibility() {
+        return defaultVisibility;
+    }
+
+    // last enabled rule matching the row, null if none
+    public CompiledRule lastMatch(String json, long objIndex) {
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            if (evaluate(rules.get(i), json, objIndex)) {
+                rules.get(i).stats().addWin();
+                return rules.get(i);
+            }
+        }
+        return null;
+    }
+
+    // the last matching include or exclude rule decides; highlight rules do not hide or show rows
+    public boolean isVisible(String json, long objIndex) {
+        countEvaluation();
+        for (CompiledRule rule : visibilityPlan) {
+            if (evaluate(rule, json, objIndex)) {
+                rule.stats().addWin();
+                return rule.action() == ActionType.include;
+            }
+        }
+        return defaultVisibility;
+    }
+
+    // 0 when the row is not highlighted, see palette(): the row has the color of the
+    // last matching rule if that is a highlight rule
+    public int colorIndex(String json, long objIndex) {
+        if (palette.isEmpty()) {
+            return 0;
+        }
+        countEvaluation();
+        for (CompiledRule rule : colorPlan) {
+            if (evaluate(rule, json, objIndex)) {
+                rule.stats().addWin();
+                return rule.colorIndex();
+            }
+        }
+        return 0;
+    }
+}
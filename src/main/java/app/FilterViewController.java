@@ -3,9 +3,7 @@ package app;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
-
-import com.jayway.jsonpath.JsonPath;
+import java.util.stream.Collectors;
 
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.*;
@@ -30,6 +28,8 @@ public class FilterViewController {
         public final StringProperty expression = new SimpleStringProperty("");
         public final ObjectProperty<Color> color = new SimpleObjectProperty<>(Color.YELLOW);
         public final BooleanProperty enabled = new SimpleBooleanProperty(true);
+        // of the current type and expression, see FilterEngine
+        public final RuleStats stats = new RuleStats();
 
         public Map<String, String> toSerializable() {
             Map<String, String> map = new HashMap<>();
@@ -51,45 +51,16 @@ public class FilterViewController {
             return rule;
         }
 
+        // compiles the rule on every call, use FilterEngine for repeated matching
         public boolean matches(String row, long objIndex) {
-            String exprText = expression.get();
-            return switch (type.get()) {
-                case case_sensitive -> row.contains(exprText);
-
-                case case_insensitive -> row.toLowerCase().contains(exprText.toLowerCase());
-
-                case regex -> {
-                    Pattern pattern = Pattern.compile(exprText, Pattern.CASE_INSENSITIVE);
-                    yield pattern.matcher(row).find();
-                }
-
-                case expr -> {
-                    // todo: preparse?
-                    Object jsonContext = JsonPathExpressionEvaluator.parseJson(row);
-                    yield JsonPathExpressionEvaluator.evaluateBoolean(exprText, jsonContext);
-                    // try {
-
-                    //     String json = "[" + row + "]";
-                    //     try {
-                    //         List<Object> result = JsonPath.<List<Object>>read(json, exprText);
-                    //         yield result != null && result.size() > 0;
-                    //     } catch (Exception e) {
-                    //         System.err.printf("[%s]: Failed to process JSONPath (%s): %s\n", objIndex, exprText, e.getMessage());
-                    //         // e.printStackTrace();
-                    //         yield false;
-                    //     }
-                    // } catch (Exception e) {
-                    //     System.err.printf("[%s]: Failed to parse JSON: %s\n", objIndex, e.getMessage());
-                    //     yield false;
-                    // }
-                }
-            };
+            return FilterEngine.compile(this, 0).matches(row, objIndex);
         }
     }
 
     private final TableView<FilterRule> table = new TableView<>();
     private final ObservableList<FilterRule> rules = FXCollections.observableArrayList();
     private Runnable onRulesChanged = () -> {};
+    private Runnable onStatsReset = () -> {};
 
     public FilterViewController() {
         TableColumn<FilterRule, Boolean> enabledCol = new TableColumn<>("✔");
@@ -155,7 +126,35 @@ public class FilterViewController {
         });
 
 
-        table.getColumns().addAll(enabledCol, actionCol, typeCol, colorCol, exprCol);
+        // planner statistics, see FilterEngine; refreshStats() updates them
+        TableColumn<FilterRule, String> costCol = new TableColumn<>("Cost");
+        costCol.setCellValueFactory(data -> new ReadOnlyStringWrapper(costText(data.getValue())));
+        costCol.setStyle("-fx-alignment: CENTER-RIGHT;");
+
+        TableColumn<FilterRule, String> selectivityCol = new TableColumn<>("Sel.");
+        selectivityCol.setCellValueFactory(data -> new ReadOnlyStringWrapper(selectivityText(data.getValue())));
+        selectivityCol.setStyle("-fx-alignment: CENTER-RIGHT;");
+
+        // rows matched out of rows evaluated, rows decided, and the time spent evaluating the rule.
+        // These add up every evaluation since the rule was changed or its statistics were reset:
+        // filter passes, but also rendered and prefetched rows and query server requests.
+        TableColumn<FilterRule, String> hitsCol = new TableColumn<>("Total Hits");
+        hitsCol.setCellValueFactory(data -> new ReadOnlyStringWrapper(hitsText(data.getValue())));
+        hitsCol.setStyle("-fx-alignment: CENTER-RIGHT;");
+
+        TableColumn<FilterRule, String> winsCol = new TableColumn<>("Total Wins");
+        winsCol.setCellValueFactory(data -> new ReadOnlyStringWrapper(countText(data.getValue().stats.wins())));
+        winsCol.setStyle("-fx-alignment: CENTER-RIGHT;");
+
+        TableColumn<FilterRule, String> timeCol = new TableColumn<>("Total Time");
+        timeCol.setCellValueFactory(data -> new ReadOnlyStringWrapper(timeText(data.getValue())));
+        timeCol.setStyle("-fx-alignment: CENTER-RIGHT;");
+
+        totalsTooltip(hitsCol, "Rows matched / rows evaluated");
+        totalsTooltip(winsCol, "Rows the rule decided");
+        totalsTooltip(timeCol, "Estimated time spent evaluating the rule, and its share of all rules");
+
+        table.getColumns().addAll(enabledCol, actionCol, typeCol, colorCol, exprCol, costCol, selectivityCol, hitsCol, winsCol, timeCol);
         table.setItems(rules);
         table.setEditable(true);
 
@@ -180,6 +179,17 @@ public class FilterViewController {
         exprCol.setMinWidth(10);
         exprCol.setPrefWidth(500);
         exprCol.setResizable(true);
+
+        costCol.setPrefWidth(70);
+        costCol.setMinWidth(10);
+        selectivityCol.setPrefWidth(55);
+        selectivityCol.setMinWidth(10);
+        hitsCol.setPrefWidth(110);
+        hitsCol.setMinWidth(10);
+        winsCol.setPrefWidth(60);
+        winsCol.setMinWidth(10);
+        timeCol.setPrefWidth(90);
+        timeCol.setMinWidth(10);
         // this does not work with column width loading. loadColumnWidths()
         // table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
 
@@ -215,7 +225,20 @@ public class FilterViewController {
 
         // context menu
         table.setRowFactory(tv -> {
-            TableRow<FilterRule> row = new TableRow<>();
+            // regex rules that ran out of steps on some rows are marked, see RuleStats.addOverBudget()
+            TableRow<FilterRule> row = new TableRow<>() {
+                @Override
+                protected void updateItem(FilterRule rule, boolean empty) {
+                    super.updateItem(rule, empty);
+                    if (empty || rule == null || rule.stats.overBudget() == 0) {
+                        setStyle("");
+                        setTooltip(null);
+                        return;
+                    }
+                    setStyle("-fx-background-color: #ffe0b3;");
+                    setTooltip(new Tooltip(overBudgetText(rule)));
+                }
+            };
             ContextMenu contextMenu = new ContextMenu();
 
             MenuItem deleteItem = new MenuItem("Delete");
@@ -226,7 +249,15 @@ public class FilterViewController {
                 }
             });
 
-            contextMenu.getItems().add(deleteItem);
+            MenuItem resetStatsItem = new MenuItem("Reset Statistics");
+            // the rules are applied again, so that the statistics start from a full filter pass
+            resetStatsItem.setOnAction(e -> {
+                rules.forEach(rule -> rule.stats.reset());
+                table.refresh();
+                onStatsReset.run();
+            });
+
+            contextMenu.getItems().addAll(deleteItem, resetStatsItem);
             row.contextMenuProperty().bind(
                 Bindings.when(row.emptyProperty()).then((ContextMenu) null).otherwise(contextMenu)
             );
@@ -295,16 +326,86 @@ public class FilterViewController {
 
     private void observeRule(FilterRule rule, Runnable onChange) {
         rule.action.addListener((obs, oldVal, newVal) -> onChange.run());
-        rule.type.addListener((obs, oldVal, newVal) -> onChange.run());
-        rule.expression.addListener((obs, oldVal, newVal) -> onChange.run());
+        rule.type.addListener((obs, oldVal, newVal) -> {
+            rule.stats.reset();
+            onChange.run();
+        });
+        rule.expression.addListener((obs, oldVal, newVal) -> {
+            rule.stats.reset();
+            onChange.run();
+        });
         rule.color.addListener((obs, oldVal, newVal) -> onChange.run());
         rule.enabled.addListener((obs, oldVal, newVal) -> onChange.run());
     }
 
+    // mean time per evaluation, in parentheses while it is the planner's guess
+    private static String costText(FilterRule rule) {
+        double micros = rule.stats.cost(rule.type.get()) / 1000;
+        String text = micros < 10 ? String.format("%.2f µs", micros) : String.format("%,.0f µs", micros);
+        return rule.stats.measured() ? text : "(" + text + ")";
+    }
+
+    // share of evaluated rows matched; the planner only evaluates a rule until an earlier one hits
+    private static String selectivityText(FilterRule rule) {
+        return rule.stats.evals() == 0 ? "" : String.format("%.1f%%", 100.0 * rule.stats.hits() / rule.stats.evals());
+    }
+
+    private static String overBudgetText(FilterRule rule) {
+        String rows = rule.stats.overBudgetRows().stream()
+            .map(objIndex -> "#" + (objIndex + 1))
+            .collect(Collectors.joining(", "));
+        return String.format("The regex ran out of steps on %d rows (%s), which count as not matching.",
+            rule.stats.overBudget(), rows);
+    }
+
+    private static void totalsTooltip(TableColumn<FilterRule, String> column, String text) {
+        Tooltip tooltip = new Tooltip(text + ", summed over all evaluations since the rule was changed or its"
+            + " statistics were reset: filter passes, rendered and prefetched rows, and query server requests");
+        column.setCellFactory(col -> {
+            @SuppressWarnings("unchecked")
+            TableCell<FilterRule, String> cell = (TableCell<FilterRule, String>) TableColumn.DEFAULT_CELL_FACTORY.call(col);
+            cell.setTooltip(tooltip);
+            return cell;
+        });
+    }
+
+    private static String hitsText(FilterRule rule) {
+        long evals = rule.stats.evals();
+        return evals == 0 ? "" : countText(rule.stats.hits()) + " / " + countText(evals);
+    }
+
+    // 12.3k, 4.5M
+    private static String countText(long count) {
+        if (count < 10_000) {
+            return String.valueOf(count);
+        }
+        return count < 10_000_000 ? String.format("%.1fk", count / 1e3) : String.format("%.1fM", count / 1e6);
+    }
+
+    // estimated total, and its share of all the rules' time so that a slow rule stands out
+    private String timeText(FilterRule rule) {
+        double nanos = rule.stats.totalNanos();
+        if (nanos == 0) {
+            return "";
+        }
+        double all = rules.stream().mapToDouble(it -> it.stats.totalNanos()).sum();
+        String time = nanos < 1e9 ? String.format("%.0f ms", nanos / 1e6) : String.format("%.1f s", nanos / 1e9);
+        return String.format("%s %.0f%%", time, 100 * nanos / all);
+    }
+
+    // shows the statistics gathered since the last call
+    public void refreshStats() {
+        table.refresh();
+    }
+
     public void setOnRulesChanged(Runnable callback) {
         this.onRulesChanged = callback;
     }
 
+    public void setOnStatsReset(Runnable callback) {
+        this.onStatsReset = callback;
+    }
+
     public void saveColumnLayout() {
         TableColumnLayoutUtil.saveColumnLayout(table, "filterColumns");
     }
@@ -0,0 +1,351 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+
+// Strip above the table with the visible rows counted per time bucket and
+// stacked by highlight color. The timestamp field is extracted once per row
+// into RowTimes on background threads, and colors are shared with the table
+// through its RowColors, so a filter change only re-buckets the new visible
+// rows; zooming only re-buckets the extracted values.
+public class HistogramController {
+    private static final double HEIGHT = 80;
+    private static final double BAR_WIDTH = 3;
+    private static final int PUBLISH_ROWS = 65536;
+    private static final Color PLAIN_COLOR = Color.web("#8899aa");
+
+    private final TableViewController tableViewController;
+    private final VBox view = new VBox();
+    private final Pane canvasPane = new Pane();
+    private final Canvas canvas = new Canvas();
+    private final TextField fieldInput = new TextField();
+    private final Label info = new Label();
+
+    private AtomicBoolean cancelled = new AtomicBoolean();
+    private TimeHistogram histogram = null;
+    // timestamps of the field, kept across refreshes until the field changes
+    private RowTimes times = null;
+    private List<Color> palette = List.of();
+    private TimeHistogram.Buckets buckets = null;
+    private long viewFrom = 0;
+    private long viewTo = 0;
+
+    public HistogramController(TableViewController tableViewController) {
+        this.tableViewController = tableViewController;
+
+        fieldInput.setText(AppSettings.loadHistogramTimeField());
+        fieldInput.setPromptText("Timestamp field");
+        fieldInput.setPrefWidth(140);
+        fieldInput.setOnAction(e -> {
+            AppSettings.saveHistogramTimeField(fieldInput.getText());
+            refresh();
+        });
+
+        Button refreshButton = new Button("↻");
+        refreshButton.setOnAction(e -> refresh());
+
+        HBox header = new HBox(fieldInput, refreshButton, info);
+        header.setSpacing(5);
+        header.setPadding(new Insets(2, 5, 2, 5));
+
+        canvasPane.getChildren().add(canvas);
+        canvasPane.setMinHeight(HEIGHT);
+        canvasPane.setPrefHeight(HEIGHT);
+        canvas.widthProperty().bind(canvasPane.widthProperty());
+        canvas.heightProperty().bind(canvasPane.heightProperty());
+        canvas.widthProperty().addListener((obs, oldVal, newVal) -> rebucket());
+        canvas.heightProperty().addListener((obs, oldVal, newVal) -> draw());
+
+        canvas.setOnScroll(e -> zoom(e.getX(), e.getDeltaY() > 0 ? 0.8 : 1.25));
+        canvas.setOnMouseClicked(e -> {
+            if (e.getButton() != MouseButton.PRIMARY) {
+                return;
+            }
+            if (e.getClickCount() == 2) {
+                resetZoom();
+            } else {
+                jumpTo(e.getX());
+            }
+        });
+        canvas.setOnMouseMoved(e -> showBucketInfo(e.getX()));
+
+        view.getChildren().addAll(header, canvasPane);
+        view.setStyle("-fx-border-color: #cccccc; -fx-border-width: 0 0 1 0;");
+    }
+
+    public VBox getView() {
+        return view;
+    }
+
+    public boolean isShowing() {
+        return view.getScene() != null;
+    }
+
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    // histogram of the currently visible rows; rows are only read for a timestamp not extracted
+    // yet and for a highlight color the table has not evaluated yet
+    public void refresh() {
+        cancelled.set(true);
+        AtomicBoolean jobCancelled = new AtomicBoolean();
+        cancelled = jobCancelled;
+
+        JsonLineReader reader = tableViewController.getReader();
+        String field = fieldInput.getText();
+        if (reader == null || field == null || field.isBlank()) {
+            return;
+        }
+        if (times == null || !times.field().equals(field)) {
+            times = new RowTimes(field);
+        }
+
+        RowTimes rowTimes = times;
+        List<LineBounds> rows = tableViewController.getVisibleRows();
+        TableViewController.Filters filters = tableViewController.getFilters();
+        FilterEngine engine = filters.engine();
+        RowColors colors = filters.colors();
+        boolean colored = engine.hasHighlights();
+
+        Background.submit(() -> {
+            // timestamps first, and the colors of the rows read for them
+            int read = readRows(rows, reader, "Scanning",
+                row -> rowTimes.get(row.objIndex()) == RowTimes.UNKNOWN,
+                (row, json) -> {
+                    long time = json == null ? TimeHistogram.MISSING : TimeHistogram.extractTime(json, field);
+                    rowTimes.set(row.objIndex(), time == RowTimes.UNKNOWN ? TimeHistogram.MISSING : time);
+                    if (colored && time != TimeHistogram.MISSING && colors.get(row.objIndex()) == RowColors.UNKNOWN) {
+                        colors.set(row.objIndex(), json.isEmpty() ? 0 : engine.colorIndex(json, row.objIndex()));
+                    }
+                },
+                jobCancelled);
+            if (read < 0) {
+                return;
+            }
+            publish(build(rows, rowTimes, colors, engine), engine.palette(), false, jobCancelled);
+
+            // then the colors of rows that were only timed before, e.g. after a highlight rule was added;
+            // until they are known these rows are counted as not highlighted
+            if (!colored) {
+                return;
+            }
+            read = readRows(rows, reader, "Coloring",
+                row -> rowTimes.get(row.objIndex()) != TimeHistogram.MISSING && colors.get(row.objIndex()) == RowColors.UNKNOWN,
+                (row, json) -> colors.set(row.objIndex(), json == null || json.isEmpty() ? 0 : engine.colorIndex(json, row.objIndex())),
+                jobCancelled);
+            if (read > 0) {
+                publish(build(rows, rowTimes, colors, engine), engine.palette(), true, jobCancelled);
+            }
+        });
+    }
+
+    // reads the rows that need it on parallel slices; returns how many, -1 when cancelled or failed
+    private int readRows(List<LineBounds> rows, JsonLineReader reader, String action, Predicate<LineBounds> needed,
+                         BiConsumer<LineBounds, String> use, AtomicBoolean jobCancelled) {
+        List<LineBounds> pending = new ArrayList<>();
+        for (LineBounds row : rows) {
+            if (needed.test(row)) {
+                pending.add(row);
+            }
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        int threads = Background.parallelism();
+        int sliceSize = (pending.size() + threads - 1) / Math.max(1, threads);
+        AtomicInteger scanned = new AtomicInteger();
+        List<Future<?>> slices = new ArrayList<>();
+
+        for (int from = 0; from < pending.size(); from += sliceSize) {
+            int start = from;
+            int end = Math.min(pending.size(), from + sliceSize);
+            slices.add(Background.executor().submit(() -> {
+                for (int i = start; i < end; i++) {
+                    if ((i - start) % PUBLISH_ROWS == 0) {
+                        if (jobCancelled.get()) {
+                            return;
+                        }
+                        publishProgress(action, scanned.addAndGet(i == start ? 0 : PUBLISH_ROWS), pending.size(), jobCancelled);
+                    }
+                    LineBounds row = pending.get(i);
+                    use.accept(row, reader.readString(row));
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> slice : slices) {
+                slice.get();
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return -1;
+        }
+        return jobCancelled.get() ? -1 : pending.size();
+    }
+
+    // from the extracted values alone; rows with a color not evaluated yet are counted as plain
+    private static TimeHistogram build(List<LineBounds> rows, RowTimes times, RowColors colors, FilterEngine engine) {
+        TimeHistogram result = new TimeHistogram(rows.size(), engine.palette().size());
+        boolean colored = engine.hasHighlights();
+        for (int i = 0; i < rows.size(); i++) {
+            long objIndex = rows.get(i).objIndex();
+            long time = times.get(objIndex);
+            if (time == RowTimes.UNKNOWN) {
+                time = TimeHistogram.MISSING;
+            }
+            int color = colored && time != TimeHistogram.MISSING ? Math.max(0, colors.get(objIndex)) : 0;
+            result.set(i, objIndex, time, color);
+        }
+        result.finish();
+        return result;
+    }
+
+    private void publish(TimeHistogram result, List<Color> palette, boolean keepView, AtomicBoolean jobCancelled) {
+        Platform.runLater(() -> {
+            if (!jobCancelled.get()) {
+                setHistogram(result, palette, keepView);
+            }
+        });
+    }
+
+    private void publishProgress(String action, int scanned, int total, AtomicBoolean jobCancelled) {
+        int percent = total == 0 ? 100 : (int) (100L * scanned / total);
+        Platform.runLater(() -> {
+            if (!jobCancelled.get()) {
+                info.setText(action + " " + SearchJob.formatCompact(total) + " rows... " + percent + "%");
+            }
+        });
+    }
+
+    // keepView: the same rows with more colors known, so the zoom stays
+    private void setHistogram(TimeHistogram histogram, List<Color> palette, boolean keepView) {
+        this.histogram = histogram;
+        this.palette = palette;
+        if (histogram.isEmpty()) {
+            info.setText("No rows with field \"" + fieldInput.getText() + "\"");
+            buckets = null;
+            draw();
+            return;
+        }
+        if (keepView) {
+            rebucket();
+        } else {
+            resetZoom();
+        }
+    }
+
+    private void resetZoom() {
+        if (histogram == null || histogram.isEmpty()) {
+            return;
+        }
+        viewFrom = histogram.getMin();
+        viewTo = histogram.getMax();
+        rebucket();
+    }
+
+    // zoom around the time under the mouse
+    private void zoom(double x, double factor) {
+        if (histogram == null || histogram.isEmpty()) {
+            return;
+        }
+
+        double span = viewTo - viewFrom + 1.0;
+        double anchor = viewFrom + span * x / Math.max(1, canvas.getWidth());
+        double newSpan = Math.max(canvas.getWidth() / BAR_WIDTH, span * factor);
+        long from = (long) (anchor - (anchor - viewFrom) * newSpan / span);
+        long to = (long) (from + newSpan - 1);
+
+        viewFrom = Math.max(histogram.getMin(), from);
+        viewTo = Math.min(histogram.getMax(), to);
+        rebucket();
+    }
+
+    private void rebucket() {
+        if (histogram == null || histogram.isEmpty()) {
+            return;
+        }
+        int count = Math.max(1, (int) (canvas.getWidth() / BAR_WIDTH));
+        buckets = histogram.bucket(viewFrom, viewTo, count);
+        info.setText(TimeHistogram.formatTime(viewFrom) + " – " + TimeHistogram.formatTime(viewTo));
+        draw();
+    }
+
+    private void draw() {
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        gc.clearRect(0, 0, width, height);
+        if (buckets == null) {
+            return;
+        }
+
+        int max = buckets.max();
+        if (max == 0) {
+            return;
+        }
+
+        double barWidth = width / buckets.count();
+        int colors = buckets.colors();
+        for (int bucket = 0; bucket < buckets.count(); bucket++) {
+            double x = bucket * barWidth;
+            double y = height;
+            for (int color = 0; color < colors; color++) {
+                int count = buckets.counts()[bucket * colors + color];
+                if (count == 0) {
+                    continue;
+                }
+                double barHeight = Math.max(1, height * count / max);
+                gc.setFill(color == 0 ? PLAIN_COLOR : palette.get(color - 1));
+                gc.fillRect(x, y - barHeight, Math.max(1, barWidth - 1), barHeight);
+                y -= barHeight;
+            }
+        }
+    }
+
+    private int bucketAt(double x) {
+        if (buckets == null || canvas.getWidth() <= 0) {
+            return -1;
+        }
+        int bucket = (int) (x / canvas.getWidth() * buckets.count());
+        return bucket >= 0 && bucket < buckets.count() ? bucket : -1;
+    }
+
+    private void showBucketInfo(double x) {
+        int bucket = bucketAt(x);
+        if (bucket < 0) {
+            return;
+        }
+        info.setText(String.format("%s  %,d rows",
+            TimeHistogram.formatTime(buckets.bucketStart(bucket)), buckets.total(bucket)));
+    }
+
+    private void jumpTo(double x) {
+        int bucket = bucketAt(x);
+        if (bucket < 0 || buckets.firstRow()[bucket] < 0) {
+            return;
+        }
+        tableViewController.scrollToObject(histogram.getObjIndex(buckets.firstRow()[bucket]));
+    }
+}
@@ -2,10 +2,13 @@ package app;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 
-import javafx.scene.control.Label;
+import app.debug.IngestChunkEvent;
+import app.debug.Metrics;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -14,34 +17,55 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 public class JsonLineReader {
 
+    // receives what the reader finds; called on the thread that adds the files
+    public interface Listener {
+        void fileAdded(String fileName, int fileId);
+        void rowAdded(LineBounds row);
+        void fileRemoved(String fileName, int fileId);
+        void loaded(int files, long rows);
+    }
+
     private record FileChunk(Path path, int fileId, long fileOffset, long size, MappedByteBuffer buffer) {}
 
     private static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE - 8;
     private static final int MAX_PAGE_SIZE = 65_536;
+    private static final int TOUCH_PAGE_SIZE = 4096;
+
+    private static final LongAdder ingestRows = Metrics.counter(Metrics.INGEST_ROWS);
+    private static final LongAdder ingestBytes = Metrics.counter(Metrics.INGEST_BYTES);
+    private static final LongAdder ingestNanos = Metrics.counter(Metrics.INGEST_NANOS);
 
     private final Map<String, Integer> fileIndexMap = new HashMap<>();
-    private final List<FileChunk> chunks = new ArrayList<>();
-    private final List<LineBounds> lines = new ArrayList<>();
+    // read by background jobs, see readString
+    private final List<FileChunk> chunks = new CopyOnWriteArrayList<>();
+    // replaced, never cleared, so that readers on other threads keep a consistent index
+    private volatile RowIndex lines = new RowIndex();
     private final Map<LineBounds, String> cache = new HashMap<>();
     private final ObjectMapper mapper = new ObjectMapper(new JsonFactory());
     private long rowIndex = 0;
     private int fileIndex = 0;
-    private TableViewController tableController;
-    private FileListController fileListController;
-    private Label statusBar;
+    private String arrayRowsField = AppSettings.loadArrayRowsField();
+    private final Listener listener;
+    private final boolean retainRows;
 
-    JsonLineReader(TableViewController tableController, Label statusBar, FileListController fileListController) {
-        this.tableController = tableController;
-        this.fileListController = fileListController;
-        this.statusBar = statusBar;
+    JsonLineReader(Listener listener) {
+        this(listener, true);
+    }
+
+    // without retainRows the bounds are only handed to the listener, for single-pass streaming
+    JsonLineReader(Listener listener, boolean retainRows) {
+        this.listener = listener;
+        this.retainRows = retainRows;
     }
 
     public void openFiles(List<Path> files) throws IOException {
         chunks.clear();
-        lines.clear();
+        lines = new RowIndex();
         cache.clear();
         rowIndex = 0;
         fileIndex = 0;
@@ -61,9 +85,14 @@ public class JsonLineReader {
             return; // file not found
         }
 
-        lines.removeIf(line -> line.fileId() == fileId);
+        RowIndex remaining = new RowIndex();
+        for (LineBounds line : lines) {
+            if (line.fileId() != fileId)
+                remaining.add(line);
+        }
+        lines = remaining;
         chunks.removeIf(chunk -> chunk.fileId() == fileId);
-        tableController.removeFile(fileName, fileId);
+        listener.fileRemoved(fileName, fileId);
         fileIndexMap.remove(fileName);
     }
 
@@ -82,7 +111,8 @@ public class JsonLineReader {
             long size = channel.size();
             long offset = 0;
             int blockOffset = 0;
-            fileListController.addFile(path.toString(), fileIndex);
+            boolean arrayElements = false;
+            listener.fileAdded(path.toString(), fileIndex);
             while (offset < size) {
                 long remaining = size - offset;
                 long mapSize = Math.min(remaining, MAX_CHUNK_SIZE);
@@ -90,7 +120,23 @@ public class JsonLineReader {
                 chunks.add(new FileChunk(path, fileIndex, offset, mapSize, buffer));
 
                 int len = buffer.limit();
-                ScanChunk consumed = scanChunk(fileName, fileIndex, buffer, blockOffset, chunkIndex, rowIndex);
+
+                // .json files holding one big array (or {"traceEvents": [...]}) get a row per element
+                if (offset == 0 && fileName.endsWith(".json")) {
+                    int arrayStart = new JsonValueScanner().findArrayStart(buffer, 0, arrayRowsField);
+                    if (arrayStart >= 0) {
+                        arrayElements = true;
+                        blockOffset = arrayStart;
+                    }
+                }
+
+                boolean endOfFile = offset + mapSize == size;
+                IngestChunkEvent event = new IngestChunkEvent();
+                event.start();
+                long scanStart = System.nanoTime();
+                ScanChunk consumed = scanChunk(fileName, fileIndex, buffer, blockOffset, chunkIndex, rowIndex, arrayElements, endOfFile);
+                ingestNanos.add(System.nanoTime() - scanStart);
+                event.commit(fileName, chunkIndex, consumed.pos - blockOffset, consumed.rowIndex - rowIndex);
 
                 // if file ends with spaces, this condition fires.
                 if (false && consumed.pos < len) { // incomplete, overlap buffers
@@ -104,6 +150,10 @@ public class JsonLineReader {
 
                 rowIndex = consumed.rowIndex;
                 chunkIndex++;
+
+                if (consumed.arrayClosed) {
+                    break; // whatever follows the row array is not rows
+                }
             }
 
             fileIndex++;
@@ -113,18 +163,30 @@ public class JsonLineReader {
             throw new RuntimeException("Error reading file: " + path, e);
         }
 
-        this.statusBar.setText("Loaded " + fileIndex + " files, " + rowIndex + " lines");
+        listener.loaded(fileIndex, rowIndex);
     }
 
-    private record ScanChunk(int pos, long rowIndex) {}
+    private record ScanChunk(int pos, long rowIndex, boolean arrayClosed) {}
 
-    private ScanChunk scanChunk(String fileName, int fileIndex, ByteBuffer buffer, int blockOffset, int chunkIndex, long rowIndex) {
+    private ScanChunk scanChunk(String fileName, int fileIndex, ByteBuffer buffer, int blockOffset, int chunkIndex, long rowIndex, boolean arrayElements, boolean endOfFile) {
         JsonValueScanner scanner = new JsonValueScanner();
         int pos = blockOffset;
         while (pos < buffer.limit()) {
+            if (arrayElements) {
+                pos = scanner.skipSeparators(buffer, pos);
+                if (pos < buffer.limit() && buffer.get(pos) == ']')
+                    return new ScanChunk(pos + 1, rowIndex, true);
+            }
+
             Optional<int[]> match = scanner.nextValue(buffer, pos);
-            if (match.isEmpty())
-                break;
+            if (match.isEmpty()) {
+                // not closed in this chunk: the next chunk starts with it, unless there is nothing
+                // more to map or it already started the chunk; then it is malformed, e.g. a truncated
+                // line, and becomes a row of its own up to the line end instead of stalling the load
+                if (!endOfFile && pos != blockOffset)
+                    break;
+                match = Optional.of(scanner.restOfLine(buffer, pos));
+            }
 
             int start = match.get()[0];
             int end = match.get()[1];
@@ -134,13 +196,21 @@ public class JsonLineReader {
                 break;
             }
             LineBounds line = new LineBounds(fileName, fileIndex, chunkIndex, start, end, rowIndex++);
+            ingestRows.increment();
+            ingestBytes.add(end - pos);
             pos = end;
 
-            lines.add(line);
-            this.tableController.addObject(line);
+            if (retainRows)
+                lines.add(line);
+            listener.rowAdded(line);
         }
 
-        return new ScanChunk(pos, rowIndex);
+        return new ScanChunk(pos, rowIndex, false);
+    }
+
+    // top-level field of .json files whose array elements are loaded as rows
+    public void setArrayRowsField(String field) {
+        this.arrayRowsField = field;
     }
 
     public int getLineCount() {
@@ -152,14 +222,76 @@ public class JsonLineReader {
     }
 
     public String getString(LineBounds b) {
-        return cache.computeIfAbsent(b, k -> {
-            FileChunk chunk = chunks.get(b.chunkIndex());
-            ByteBuffer buffer = chunk.buffer().duplicate();
-            buffer.position(b.start());
-            byte[] data = new byte[b.end() - b.start()];
-            buffer.get(data);
-            return new String(data, StandardCharsets.UTF_8);
-        });
+        return cache.computeIfAbsent(b, k -> readString(b));
+    }
+
+    // uncached read straight from the mapped chunk, safe to call from background threads
+    public String readString(LineBounds b) {
+        return readString(b, Integer.MAX_VALUE);
+    }
+
+    // at most maxBytes of the row; a multi-byte character cut at the end decodes as U+FFFD
+    public String readString(LineBounds b, int maxBytes) {
+        return new String(readBytes(b, maxBytes), StandardCharsets.UTF_8);
+    }
+
+    // raw UTF-8 bytes of the row, at most maxBytes; thread-safe like readString
+    public byte[] readBytes(LineBounds b, int maxBytes) {
+        FileChunk chunk = chunks.get(b.chunkIndex());
+        byte[] data = new byte[Math.min(b.end() - b.start(), maxBytes)];
+        chunk.buffer().get(b.start(), data);
+        return data;
+    }
+
+    // reads a byte of every page of the row so that the OS maps it in; thread-safe like readString
+    public void touch(LineBounds b) {
+        ByteBuffer buffer = chunks.get(b.chunkIndex()).buffer();
+        for (int i = b.start(); i < b.end(); i += TOUCH_PAGE_SIZE) {
+            buffer.get(i);
+        }
+    }
+
+    // the row as a stream over the mapped chunk, without copying; thread-safe like readString
+    public InputStream openStream(LineBounds b) {
+        ByteBuffer buffer = chunks.get(b.chunkIndex()).buffer();
+        return new ByteBufferBackedInputStream(buffer.slice(b.start(), b.end() - b.start()));
+    }
+
+    // the files rows are read from, each once
+    public List<Path> filePaths() {
+        return chunks.stream().map(FileChunk::path).distinct().toList();
+    }
+
+    public Path filePath(LineBounds b) {
+        return chunks.get(b.chunkIndex()).path();
+    }
+
+    // position of the row's first byte in its file
+    public long fileOffset(LineBounds b) {
+        return chunks.get(b.chunkIndex()).fileOffset() + b.start();
+    }
+
+    // true when a and b are consecutive in the same chunk, separated only by blanks and at least one line break
+    public boolean isLineBreakBetween(LineBounds a, LineBounds b, int maxGap) {
+        if (a.chunkIndex() != b.chunkIndex() || b.start() < a.end() || b.start() - a.end() > maxGap) {
+            return false;
+        }
+
+        ByteBuffer buffer = chunks.get(a.chunkIndex()).buffer();
+        boolean lineBreak = false;
+        for (int i = a.end(); i < b.start(); i++) {
+            byte c = buffer.get(i);
+            if (c == '\n') {
+                lineBreak = true;
+            } else if (c != ' ' && c != '\t' && c != '\r') {
+                return false;
+            }
+        }
+        return lineBreak;
+    }
+
+    public JsonTape buildTape(LineBounds b) {
+        return JsonTape.build(chunks.get(b.chunkIndex()).buffer(), b.start(), b.end());
     }
 
     public Map<String, Object> parse(LineBounds b) {
@@ -170,6 +302,7 @@ public class JsonLineReader {
         }
     }
 
+    // safe to read from other threads while files are being added
     public List<LineBounds> getAllBounds() {
         return lines;
     }
@@ -0,0 +1,164 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+
+// The compact serialization of a record, built once, plus the text span of
+// every node in pre-order. Text matches are mapped back to the innermost node
+// containing them and reported as paths of child ordinals from the root.
+public class JsonSearchIndex {
+    private static final JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    private final StringBuilder out = new StringBuilder();
+    private final BooleanSupplier cancelled;
+    private final String text;
+
+    // per node, in pre-order; an object field's span starts at its key
+    private int[] start = new int[64];
+    private int[] end = new int[64];
+    private int[] parent = new int[64];
+    private int[] ordinal = new int[64];
+    private int count = 0;
+
+    private JsonSearchIndex(JsonNode root, BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+        write(root, -1, 0);
+        this.text = out.toString();
+        out.setLength(0);
+    }
+
+    // throws CancellationException when cancelled reports true
+    public static JsonSearchIndex build(JsonNode root, BooleanSupplier cancelled) {
+        return new JsonSearchIndex(root, cancelled);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    private int addSpan(int parentSpan, int childOrdinal) {
+        if (count == start.length) {
+            int size = count * 2;
+            start = Arrays.copyOf(start, size);
+            end = Arrays.copyOf(end, size);
+            parent = Arrays.copyOf(parent, size);
+            ordinal = Arrays.copyOf(ordinal, size);
+        }
+        if (count % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+            throw new CancellationException();
+        }
+
+        start[count] = out.length();
+        parent[count] = parentSpan;
+        ordinal[count] = childOrdinal;
+        return count++;
+    }
+
+    private void write(JsonNode node, int parentSpan, int childOrdinal) {
+        int span = addSpan(parentSpan, childOrdinal);
+        writeValue(node, span);
+        end[span] = out.length();
+    }
+
+    private void writeValue(JsonNode node, int span) {
+        if (node.isObject()) {
+            out.append('{');
+            int index = 0;
+            for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); index++) {
+                Map.Entry<String, JsonNode> field = it.next();
+                if (index > 0) {
+                    out.append(',');
+                }
+
+                int fieldSpan = addSpan(span, index);
+                out.append('"');
+                encoder.quoteAsString(field.getKey(), out);
+                out.append('"').append(':');
+                writeValue(field.getValue(), fieldSpan);
+                end[fieldSpan] = out.length();
+            }
+            out.append('}');
+        } else if (node.isArray()) {
+            out.append('[');
+            int index = 0;
+            for (JsonNode element : node) {
+                if (index > 0) {
+                    out.append(',');
+                }
+                write(element, span, index++);
+            }
+            out.append(']');
+        } else {
+            out.append(node.toString());
+        }
+    }
+
+    // paths of the innermost nodes containing the query, in document order
+    public List<int[]> find(String lowerQuery, BooleanSupplier cancelled) {
+        List<int[]> matches = new ArrayList<>();
+        if (lowerQuery.isEmpty()) {
+            return matches;
+        }
+
+        int lastSpan = -1;
+        int checks = 0;
+        int pos = SearchJob.indexOfIgnoreCase(text, lowerQuery, 0);
+        while (pos >= 0) {
+            if (++checks % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+
+            int span = innermostSpan(pos, pos + lowerQuery.length());
+            // the record itself has no tree item
+            if (span > 0 && span != lastSpan) {
+                matches.add(path(span));
+                lastSpan = span;
+            }
+            pos = SearchJob.indexOfIgnoreCase(text, lowerQuery, pos + 1);
+        }
+        return matches;
+    }
+
+    private int innermostSpan(int from, int to) {
+        // last span starting at or before from; spans are nested, so the
+        // innermost one containing [from, to) is this span or one of its ancestors
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (start[mid] <= from) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        int span = low;
+        while (span >= 0 && end[span] < to) {
+            span = parent[span];
+        }
+        return span;
+    }
+
+    private int[] path(int span) {
+        int depth = 0;
+        for (int it = span; parent[it] >= 0; it = parent[it]) {
+            depth++;
+        }
+
+        int[] path = new int[depth];
+        for (int it = span; parent[it] >= 0; it = parent[it]) {
+            path[--depth] = ordinal[it];
+        }
+        return path;
+    }
+}
@@ -0,0 +1,279 @@
+package app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+// Structural index of one JSON value held in a (mapped) buffer. A single pass
+// records every token in a long[]: scalars take one entry, containers two.
+//
+//   header: type << 60 | byte offset of the token
+//   aux:    containers only, byte offset past the closing bracket << 32 | index of the next sibling
+//
+// Navigation and subtree byte ranges use the tape alone; values are decoded
+// from the buffer on demand, so memory stays proportional to the tape.
+public class JsonTape {
+    public enum Type { OBJECT, ARRAY, STRING, PRIMITIVE }
+
+    private static final Type[] TYPES = Type.values();
+    private static final long OFFSET_MASK = (1L << 60) - 1;
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private long[] tape = new long[1024];
+    private int length = 0;
+
+    private JsonTape(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.limit = end;
+        parse(start, end);
+        this.tape = Arrays.copyOf(tape, length);
+    }
+
+    // throws IllegalArgumentException when the range is not a single well-formed value
+    public static JsonTape build(ByteBuffer buffer, int start, int end) {
+        return new JsonTape(buffer.duplicate(), start, end);
+    }
+
+    private void add(long value) {
+        if (length == tape.length) {
+            tape = Arrays.copyOf(tape, length * 2);
+        }
+        tape[length++] = value;
+    }
+
+    private void parse(int start, int end) {
+        int[] stack = new int[64];
+        int depth = 0;
+        int pos = start;
+
+        while (pos < end) {
+            byte c = buffer.get(pos);
+            switch (c) {
+                case ' ', '\t', '\r', '\n', ',', ':' -> pos++;
+                case '{', '[' -> {
+                    if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                    }
+                    stack[depth++] = length;
+                    add((long) (c == '{' ? Type.OBJECT : Type.ARRAY).ordinal() << 60 | pos);
+                    add(0);
+                    pos++;
+                }
+                case '}', ']' -> {
+                    if (depth == 0) {
+                        throw new IllegalArgumentException("Unbalanced '" + (char) c + "' at " + pos);
+                    }
+                    int open = stack[--depth];
+                    pos++;
+                    tape[open + 1] = (long) pos << 32 | length;
+                }
+                case '"' -> {
+                    add((long) Type.STRING.ordinal() << 60 | pos);
+                    pos = stringEnd(pos);
+                }
+                default -> {
+                    add((long) Type.PRIMITIVE.ordinal() << 60 | pos);
+                    pos = primitiveEnd(pos);
+                }
+            }
+            if (depth == 0 && length > 0) {
+                break;
+            }
+        }
+
+        if (depth != 0 || length == 0) {
+            throw new IllegalArgumentException("Incomplete JSON value");
+        }
+    }
+
+    private int stringEnd(int pos) {
+        boolean escape = false;
+        for (int i = pos + 1; i < limit; i++) {
+            byte c = buffer.get(i);
+            if (escape) {
+                escape = false;
+            } else if (c == '\\') {
+                escape = true;
+            } else if (c == '"') {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string at " + pos);
+    }
+
+    private int primitiveEnd(int pos) {
+        for (int i = pos; i < limit; i++) {
+            byte c = buffer.get(i);
+            if (c == ',' || c == ']' || c == '}' || c == ':' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    public int root() {
+        return 0;
+    }
+
+    public int tapeLength() {
+        return length;
+    }
+
+    public Type type(int token) {
+        return TYPES[(int) (tape[token] >>> 60)];
+    }
+
+    public boolean isContainer(int token) {
+        Type type = type(token);
+        return type == Type.OBJECT || type == Type.ARRAY;
+    }
+
+    // byte range of the token's whole subtree within the buffer
+    public int start(int token) {
+        return (int) (tape[token] & OFFSET_MASK);
+    }
+
+    public int end(int token) {
+        return switch (type(token)) {
+            case OBJECT, ARRAY -> (int) (tape[token + 1] >>> 32);
+            case STRING -> stringEnd(start(token));
+            case PRIMITIVE -> primitiveEnd(start(token));
+        };
+    }
+
+    // token following this one's subtree
+    public int next(int token) {
+        return isContainer(token) ? (int) tape[token + 1] : token + 1;
+    }
+
+    // array elements, or alternating keys and values for objects
+    public List<Integer> children(int token) {
+        List<Integer> children = new ArrayList<>();
+        if (!isContainer(token)) {
+            return children;
+        }
+        for (int child = token + 2, last = next(token); child < last; child = next(child)) {
+            children.add(child);
+        }
+        return children;
+    }
+
+    public int size(int token) {
+        if (!isContainer(token)) {
+            return 0;
+        }
+        int count = 0;
+        for (int child = token + 2, last = next(token); child < last; child = next(child)) {
+            count++;
+        }
+        return type(token) == Type.OBJECT ? count / 2 : count;
+    }
+
+    // value token of the named field in an object, -1 if absent
+    public int field(int object, String name) {
+        if (type(object) != Type.OBJECT) {
+            return -1;
+        }
+        for (int key = object + 2, last = next(object); key < last; key = next(key + 1)) {
+            if (keyEquals(key, name)) {
+                return key + 1;
+            }
+        }
+        return -1;
+    }
+
+    // depth-first search with the same visiting order as JsonNode.findValue
+    public int findValue(int token, String name) {
+        if (type(token) == Type.OBJECT) {
+            int direct = field(token, name);
+            if (direct >= 0) {
+                return direct;
+            }
+            for (int key = token + 2, last = next(token); key < last; key = next(key + 1)) {
+                int found = findValue(key + 1, name);
+                if (found >= 0) {
+                    return found;
+                }
+            }
+        } else if (type(token) == Type.ARRAY) {
+            for (int element = token + 2, last = next(token); element < last; element = next(element)) {
+                int found = findValue(element, name);
+                if (found >= 0) {
+                    return found;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public List<String> keys(int object) {
+        List<String> keys = new ArrayList<>();
+        if (type(object) == Type.OBJECT) {
+            for (int key = object + 2, last = next(object); key < last; key = next(key + 1)) {
+                keys.add(stringValue(key));
+            }
+        }
+        return keys;
+    }
+
+    private boolean keyEquals(int key, String name) {
+        int start = start(key) + 1;
+        int end = end(key) - 1;
+        byte[] expected = name.getBytes(StandardCharsets.UTF_8);
+
+        // raw compare is exact unless the key uses escapes
+        boolean escaped = false;
+        if (end - start == expected.length) {
+            for (int i = 0; i < expected.length; i++) {
+                byte c = buffer.get(start + i);
+                if (c == '\\') {
+                    escaped = true;
+                    break;
+                }
+                if (c != expected[i]) {
+                    return false;
+                }
+            }
+            if (!escaped) {
+                return true;
+            }
+        }
+        for (int i = start; i < end && !escaped; i++) {
+            escaped = buffer.get(i) == '\\';
+        }
+        return escaped && name.equals(stringValue(key));
+    }
+
+    public String stringValue(int token) {
+        JsonNode node = decode(token);
+        return node == null ? null : node.asText();
+    }
+
+    // Jackson tree of a single subtree, only call this for reasonably small values
+    public JsonNode decode(int token) {
+        try {
+            return AppSettings.getMapper().readTree(bytes(start(token), end(token)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON at " + start(token), e);
+        }
+    }
+
+    // raw text of the subtree, cut after maxBytes
+    public String text(int token, int maxBytes) {
+        int start = start(token);
+        int end = Math.min(end(token), start + maxBytes);
+        return new String(bytes(start, end), StandardCharsets.UTF_8);
+    }
+
+    private byte[] bytes(int start, int end) {
+        byte[] data = new byte[end - start];
+        buffer.get(start, data);
+        return data;
+    }
+}
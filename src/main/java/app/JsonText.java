@@ -0,0 +1,94 @@
+package app;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+
+// Compact JSON text helpers producing the same output as JsonNode.toString(),
+// without having to serialize a whole subtree to answer small questions.
+public class JsonText {
+    private static final JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+
+    // at most limit + 1 chars of the compact serialization, so callers can tell truncation apart
+    public static String head(JsonNode node, int limit) {
+        StringBuilder out = new StringBuilder(Math.min(limit + 1, 256));
+        append(node, out, limit + 1);
+        return out.length() > limit + 1 ? out.substring(0, limit + 1) : out.toString();
+    }
+
+    // returns false once out holds at least limit chars
+    private static boolean append(JsonNode node, StringBuilder out, int limit) {
+        if (node.isObject()) {
+            out.append('{');
+            boolean first = true;
+            for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = it.next();
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                appendKey(field.getKey(), out);
+                if (out.length() >= limit || !append(field.getValue(), out, limit)) {
+                    return false;
+                }
+            }
+            out.append('}');
+        } else if (node.isArray()) {
+            out.append('[');
+            boolean first = true;
+            for (JsonNode element : node) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                if (!append(element, out, limit)) {
+                    return false;
+                }
+            }
+            out.append(']');
+        } else {
+            out.append(node.toString());
+        }
+        return out.length() < limit;
+    }
+
+    private static void appendKey(String key, StringBuilder out) {
+        out.append('"');
+        encoder.quoteAsString(key, out);
+        out.append('"').append(':');
+    }
+
+    // length of node.toString(), memoized per container node
+    public static int length(JsonNode node, Map<JsonNode, Integer> memo) {
+        if (!node.isContainerNode()) {
+            return node.toString().length();
+        }
+
+        Integer cached = memo.get(node);
+        if (cached != null) {
+            return cached;
+        }
+
+        int size = 2;
+        int count = 0;
+        if (node.isObject()) {
+            for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = it.next();
+                size += encoder.quoteAsString(field.getKey()).length + 3;
+                size += length(field.getValue(), memo);
+                count++;
+            }
+        } else {
+            for (JsonNode element : node) {
+                size += length(element, memo);
+                count++;
+            }
+        }
+        size += Math.max(0, count - 1);
+
+        memo.put(node, size);
+        return size;
+    }
+}
@@ -5,6 +5,8 @@ import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 public class JsonValueScanner {
+    // a raw line break inside a string: the value is broken (a truncated line, say) and is not closed later
+    private static final int MALFORMED = -2;
 
     public Optional<int[]> nextValue(ByteBuffer buffer, int start) {
         int len = buffer.limit();
@@ -17,13 +19,77 @@ public class JsonValueScanner {
             case '{' -> findBalanced(buffer, pos, '{', '}');
             case '[' -> findBalanced(buffer, pos, '[', ']');
             case '"' -> findStringEnd(buffer, pos);
+            case '}', ']' -> findLineEnd(buffer, pos); // stray closing bracket
             default  -> findPrimitiveEnd(buffer, pos);
         };
 
+        if (end == MALFORMED) return Optional.of(new int[]{pos, findLineEnd(buffer, pos)});
         if (end < 0) return Optional.empty(); // incomplete or malformed
         return Optional.of(new int[]{pos, end});
     }
 
+    // Malformed value at start that will never be closed: the rest of its line
+    public int[] restOfLine(ByteBuffer buffer, int start) {
+        int pos = skipWhitespace(buffer, start, buffer.limit());
+        return new int[]{pos, findLineEnd(buffer, pos)};
+    }
+
+    // Position just after the '[' of the array whose elements are rows: the
+    // top-level value itself when it is an array, otherwise the array value of
+    // the given top-level field. -1 when there is no such array.
+    public int findArrayStart(ByteBuffer buffer, int start, String field) {
+        int len = buffer.limit();
+        int pos = skipWhitespace(buffer, start, len);
+        if (pos >= len)
+            return -1;
+
+        char firstChar = (char) buffer.get(pos);
+        if (firstChar == '[')
+            return pos + 1;
+        if (firstChar != '{' || field == null || field.isEmpty())
+            return -1;
+
+        pos++;
+        while (true) {
+            pos = skipWhitespace(buffer, pos, len);
+            if (pos >= len || buffer.get(pos) != '"')
+                return -1;
+
+            int keyEnd = findStringEnd(buffer, pos);
+            if (keyEnd < 0)
+                return -1;
+            String key = extract(buffer, pos + 1, keyEnd - 1);
+
+            pos = skipWhitespace(buffer, keyEnd, len);
+            if (pos >= len || buffer.get(pos) != ':')
+                return -1;
+            pos = skipWhitespace(buffer, pos + 1, len);
+
+            if (key.equals(field) && pos < len && buffer.get(pos) == '[')
+                return pos + 1;
+
+            Optional<int[]> value = nextValue(buffer, pos);
+            if (value.isEmpty() || value.get()[0] >= value.get()[1])
+                return -1;
+
+            pos = skipWhitespace(buffer, value.get()[1], len);
+            if (pos >= len || buffer.get(pos) != ',')
+                return -1;
+            pos++;
+        }
+    }
+
+    // skips whitespace and element separators between array elements
+    public int skipSeparators(ByteBuffer buffer, int pos) {
+        int len = buffer.limit();
+        while (pos < len) {
+            char c = (char) buffer.get(pos);
+            if (c != ',' && !Character.isWhitespace(c)) break;
+            pos++;
+        }
+        return pos;
+    }
+
     private int skipWhitespace(ByteBuffer buffer, int pos, int len) {
         while (pos < len) {
             char c = (char) buffer.get(pos);
@@ -42,7 +108,9 @@ public class JsonValueScanner {
             char c = (char) buf.get(i);
 
             if (inString) {
-                if (escape) {
+                if (c == '\n') {
+                    return MALFORMED;
+                } else if (escape) {
                     escape = false;
                 } else if (c == '\\') {
                     escape = true;
@@ -69,7 +137,9 @@ public class JsonValueScanner {
         boolean escape = false;
         for (int i = pos + 1; i < buf.limit(); i++) {
             char c = (char) buf.get(i);
-            if (escape) {
+            if (c == '\n') {
+                return MALFORMED;
+            } else if (escape) {
                 escape = false;
             } else if (c == '\\') {
                 escape = true;
@@ -90,6 +160,15 @@ public class JsonValueScanner {
         return buf.limit(); // till end
     }
 
+    private int findLineEnd(ByteBuffer buf, int pos) {
+        for (int i = pos; i < buf.limit(); i++) {
+            if (buf.get(i) == '\n') {
+                return i;
+            }
+        }
+        return buf.limit();
+    }
+
     // Debug helper
     public static String extract(ByteBuffer buffer, int start, int end) {
         byte[] data = new byte[end - start];
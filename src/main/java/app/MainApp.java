@@ -8,8 +8,10 @@ import java.util.List;
 import app.FilterViewController.FilterRule;
 import app.debug.TraceLogger;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.ListChangeListener;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -22,6 +24,7 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
@@ -33,9 +36,15 @@ public class MainApp extends Application
     private TableViewController tableViewController = new TableViewController(treeViewController);
     private FilterViewController filterViewController = new FilterViewController();
     private FileListController fileListController = new FileListController(tableViewController);
+    private HistogramController histogramController = new HistogramController(tableViewController);
+    private AggregationController aggregationController = new AggregationController(tableViewController);
     private TextField searchField = new TextField();
     private Label statusBar = new Label("Ready");
+    private PerfHud perfHud = new PerfHud();
+    private Button cancelExportButton = new Button("Cancel Export");
+    private RowExporter exporter = null;
     private JsonLineReader jsonLineReader;
+    private QueryServer queryServer;
 
     @Override
     public void start(Stage primaryStage) {
@@ -62,6 +71,7 @@ public class MainApp extends Application
         double[] bounds = AppSettings.loadWindowBounds(1200, 800);
 
         Scene scene = new Scene(rootPane, 1200, 800);
+        perfHud.setScene(scene);
 
         if (!Double.isNaN(bounds[0])) {
             primaryStage.setX(bounds[0]);
@@ -91,9 +101,51 @@ public class MainApp extends Application
         primaryStage.setTitle("JSON Viewer");
         primaryStage.setScene(scene);
         primaryStage.show();
-        jsonLineReader = new JsonLineReader(tableViewController, statusBar, fileListController);
+        jsonLineReader = new JsonLineReader(new JsonLineReader.Listener() {
+            @Override
+            public void fileAdded(String fileName, int fileId) {
+                fileListController.addFile(fileName, fileId);
+            }
+
+            @Override
+            public void rowAdded(LineBounds row) {
+                tableViewController.addObject(row);
+            }
+
+            @Override
+            public void fileRemoved(String fileName, int fileId) {
+                tableViewController.removeFile(fileName, fileId);
+            }
+
+            @Override
+            public void loaded(int files, long rows) {
+                statusBar.setText("Loaded " + files + " files, " + rows + " lines");
+            }
+        });
         tableViewController.reset(jsonLineReader);
 
+        // --array-field=<name>: rows of .json files are the elements of this top-level array field
+        String arrayField = getParameters().getNamed().get("array-field");
+        if (arrayField != null) {
+            AppSettings.saveArrayRowsField(arrayField);
+            jsonLineReader.setArrayRowsField(arrayField);
+        }
+
+        // --stall-ms=<ms>: log where the FX thread was busy when it stalls longer than this, 0 turns it off
+        // --stall-log=<file>: where, by default jsonl-viewer-stalls.log in the temp directory
+        long stallMillis = Long.parseLong(getParameters().getNamed().getOrDefault("stall-ms", "200"));
+        if (stallMillis > 0) {
+            String stallLog = getParameters().getNamed().get("stall-log");
+            Path log = stallLog != null ? Path.of(stallLog) : Path.of(System.getProperty("java.io.tmpdir"), "jsonl-viewer-stalls.log");
+            new StallWatchdog(scene, stallMillis, log).start();
+        }
+
+        // --server=<port>: answer queries over the loaded rows on localhost
+        String serverPort = getParameters().getNamed().get("server");
+        if (serverPort != null) {
+            startQueryServer(serverPort);
+        }
+
         tableViewController.focus();
 
         this.initialLoadFile();
@@ -105,7 +157,10 @@ public class MainApp extends Application
             filterViewController.saveRulesToPreferences();
             filterViewController.saveColumnLayout();
             tableViewController.saveColumnLayout();
-            TraceLogger.save("trace.json");
+            TraceLogger.close();
+            if (queryServer != null) {
+                queryServer.stop();
+            }
         });
 
         // apply filters when cells are edited
@@ -113,14 +168,21 @@ public class MainApp extends Application
             tableViewController.applyFilters(filterViewController.getRules());
         });
 
+        filterViewController.setOnStatsReset(() -> {
+            tableViewController.reapplyFilters(filterViewController.getRules());
+        });
+
         // apply filters when a rule is added or removed
         filterViewController.getRules().addListener((ListChangeListener<? super FilterRule>) c -> {
             tableViewController.applyFilters(filterViewController.getRules());
         });
 
-        // apply filters when search field is changed
-        searchField.textProperty().addListener((obs, oldVal, newVal) -> {
-            tableViewController.applyFilters(filterViewController.getRules());
+        // the histogram follows the visible rows, the rule statistics the filter pass
+        tableViewController.setOnFiltersApplied(() -> {
+            if (histogramController.isShowing()) {
+                histogramController.refresh();
+            }
+            filterViewController.refreshStats();
         });
 
         fileListController.setOnFileOpen(() -> openFile(primaryStage));
@@ -181,7 +243,11 @@ public class MainApp extends Application
             }
 
             if (ev.getCode() == KeyCode.ENTER && !ev.isControlDown() && !ev.isAltDown()) {
-                tableViewController.selectNextMatch();
+                if (ev.isShiftDown()) {
+                    tableViewController.selectPreviousMatch();
+                } else {
+                    tableViewController.selectNextMatch();
+                }
             }
 
         });
@@ -190,9 +256,16 @@ public class MainApp extends Application
         HBox.setHgrow(searchField, Priority.ALWAYS);
         searchField.setMaxWidth(Double.MAX_VALUE);
 
+        // ## search match count
+        Label searchStatus = new Label();
+        searchStatus.textProperty().bind(tableViewController.searchStatusProperty());
+
         // some control
         ToggleButton toggleElementsButton = new ToggleButton("#");
         ToggleButton toggleSizeButton = new ToggleButton("Size");
+        ToggleButton toggleHistogramButton = new ToggleButton("Histogram");
+        Button exportButton = new Button("Export...");
+        exportButton.setOnAction(e -> exportVisibleRows(primaryStage));
 
         toggleElementsButton.selectedProperty().addListener((obs, oldVal, newVal) -> {
             treeViewController.setShowElements(newVal);
@@ -202,6 +275,10 @@ public class MainApp extends Application
             treeViewController.setShowByteSize(newVal);
         });
 
+        toggleHistogramButton.selectedProperty().addListener((obs, oldVal, newVal) -> {
+            middleArea.setHistogramVisible(newVal);
+        });
+
         // wrap it finally
         HBox topBarContainer = new HBox(toggleExplorerTab, goToField, searchField);
         topBarContainer.setSpacing(10);
@@ -212,8 +289,11 @@ public class MainApp extends Application
             toggleExplorerTab,
             toggleElementsButton,
             toggleSizeButton,
+            toggleHistogramButton,
+            exportButton,
             goToField,
-            searchField
+            searchField,
+            searchStatus
         );
         toolBar.setStyle("-fx-background-color: #eeeeee; -fx-border-color: #cccccc;");
         toolBar.setPadding(new Insets(5));
@@ -229,7 +309,29 @@ public class MainApp extends Application
     private Node buildStatusBar()
     {
         // # status bar
-        HBox statusContainer = new HBox(statusBar);
+        // ## performance figures, shown on demand
+        ToggleButton togglePerfButton = new ToggleButton("Perf");
+        togglePerfButton.setFocusTraversable(false);
+        togglePerfButton.selectedProperty().addListener((obs, oldVal, newVal) -> {
+            perfHud.setShowing(newVal);
+        });
+
+        Region spacer = new Region();
+        HBox.setHgrow(spacer, Priority.ALWAYS);
+
+        // ## shown while an export runs
+        cancelExportButton.setFocusTraversable(false);
+        cancelExportButton.setVisible(false);
+        cancelExportButton.setManaged(false);
+        cancelExportButton.setOnAction(e -> {
+            if (exporter != null) {
+                exporter.cancel();
+            }
+        });
+
+        HBox statusContainer = new HBox(statusBar, cancelExportButton, spacer, perfHud.getView(), togglePerfButton);
+        statusContainer.setSpacing(10);
+        statusContainer.setAlignment(Pos.CENTER_LEFT);
         statusContainer.setPadding(new Insets(5));
         statusContainer.setStyle("-fx-background-color: #eeeeee; -fx-border-color: #cccccc;");
 
@@ -242,7 +344,9 @@ public class MainApp extends Application
             fileListController,
             filterViewController,
             tableViewController,
-            treeViewController
+            treeViewController,
+            histogramController,
+            aggregationController
         );
     }
 
@@ -263,6 +367,71 @@ public class MainApp extends Application
         this.tryToOpenFile(files, true);
     }
 
+    private void startQueryServer(String port) {
+        try {
+            queryServer = new QueryServer(jsonLineReader, tableViewController::getFilterEngine);
+            queryServer.start(Integer.parseInt(port));
+            statusBar.setText("Query server on http://127.0.0.1:" + queryServer.getPort());
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            Toast.show("Query server failed: " + e.getMessage(), 3000);
+        }
+    }
+
+    // writes the visible rows to a new JSONL file, copying their bytes as they are,
+    // so rows of pretty-printed files keep their line breaks
+    private void exportVisibleRows(Stage stage) {
+        List<LineBounds> rows = tableViewController.getVisibleRows();
+        if (rows.isEmpty())
+            return;
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Visible Rows");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("JSONL Files", "*.jsonl"));
+        File target = fileChooser.showSaveDialog(stage);
+        if (target == null)
+            return;
+
+        if (exporter != null) {
+            exporter.cancel();
+        }
+        RowExporter current = new RowExporter(rows, jsonLineReader, progress -> Platform.runLater(() -> {
+            statusBar.setText((progress.done() ? "Exported " : "Exporting ") + progress);
+        }));
+        exporter = current;
+        cancelExportButton.setVisible(true);
+        cancelExportButton.setManaged(true);
+
+        Background.submit(() -> {
+            try {
+                RowExporter.Progress done = current.export(target.toPath());
+                Platform.runLater(() -> {
+                    if (current.isCancelled()) {
+                        if (exporter == current) {
+                            statusBar.setText("Export cancelled");
+                        }
+                    } else {
+                        Toast.show(String.format("Exported %,d rows to %s", done.rows(), target.getName()), 3000);
+                    }
+                });
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+                Platform.runLater(() -> statusBar.setText("Export failed: " + e.getMessage()));
+            }
+            finally {
+                Platform.runLater(() -> {
+                    if (exporter == current) {
+                        exporter = null;
+                        cancelExportButton.setVisible(false);
+                        cancelExportButton.setManaged(false);
+                    }
+                });
+            }
+        });
+    }
+
     private void saveOpenFileList()
     {
         AppSettings.saveLastOpenedFile(fileListController.getOpenFiles());
@@ -0,0 +1,139 @@
+package app;
+
+// Bitmap over row indices with a 64-ary summary tree on top of the leaf words:
+// bit i of levels[l + 1] is set when word i of levels[l] is non-zero.
+// next/previous lookups touch one word per level, so jumps are O(log64 n).
+public class MatchBitmap {
+    private final long[][] levels;
+    private final int size;
+
+    public MatchBitmap(int size) {
+        this.size = size;
+
+        int depth = 1;
+        for (long words = wordCount(size); words > 1; words = wordCount(words)) {
+            depth++;
+        }
+
+        levels = new long[depth][];
+        long bits = size;
+        for (int level = 0; level < depth; level++) {
+            levels[level] = new long[(int) Math.max(1, wordCount(bits))];
+            bits = levels[level].length;
+        }
+    }
+
+    private static long wordCount(long bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void set(int index) {
+        if (index < 0 || index >= size) {
+            return;
+        }
+
+        // leaf first, so that a set summary bit always points to a non-empty word
+        long position = index;
+        for (long[] level : levels) {
+            int word = (int) (position >>> 6);
+            long mask = 1L << (position & 63);
+            if ((level[word] & mask) != 0) {
+                return;
+            }
+            level[word] |= mask;
+            position = word;
+        }
+    }
+
+    public boolean get(long index) {
+        if (index < 0 || index >= size) {
+            return false;
+        }
+        return (levels[0][(int) (index >>> 6)] & (1L << (index & 63))) != 0;
+    }
+
+    // first set bit at or after from, -1 if none
+    public int nextSetBit(long from) {
+        if (from < 0) {
+            from = 0;
+        }
+        if (from >= size) {
+            return -1;
+        }
+
+        int level = 0;
+        long position = from;
+        while (true) {
+            long[] words = levels[level];
+            int word = (int) (position >>> 6);
+            if (word >= words.length) {
+                return -1;
+            }
+
+            long bits = words[word] & (-1L << (position & 63));
+            if (bits != 0) {
+                position = ((long) word << 6) + Long.numberOfTrailingZeros(bits);
+                break;
+            }
+
+            if (level == levels.length - 1) {
+                return -1;
+            }
+            position = word + 1;
+            level++;
+        }
+
+        return descend(level, position, true);
+    }
+
+    // last set bit at or before from, -1 if none
+    public int previousSetBit(long from) {
+        if (from >= size) {
+            from = size - 1;
+        }
+        // also an empty bitmap, where the clamp leaves -1
+        if (from < 0) {
+            return -1;
+        }
+
+        int level = 0;
+        long position = from;
+        while (true) {
+            long[] words = levels[level];
+            int word = (int) (position >>> 6);
+
+            long bits = words[word] & (-1L >>> (63 - (position & 63)));
+            if (bits != 0) {
+                position = ((long) word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+                break;
+            }
+
+            if (level == levels.length - 1 || word == 0) {
+                return -1;
+            }
+            position = word - 1;
+            level++;
+        }
+
+        return descend(level, position, false);
+    }
+
+    private int descend(int level, long position, boolean lowest) {
+        while (level > 0) {
+            level--;
+            long bits = levels[level][(int) position];
+            if (bits == 0) {
+                // summary published ahead of the leaf by a concurrent writer
+                return -1;
+            }
+            position = (position << 6) + (lowest
+                ? Long.numberOfTrailingZeros(bits)
+                : 63 - Long.numberOfLeadingZeros(bits));
+        }
+        return position < size ? (int) position : -1;
+    }
+}
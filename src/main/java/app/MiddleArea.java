@@ -9,11 +9,15 @@ import com.fasterxml.jackson.databind.JsonNode;
 import javafx.geometry.Orientation;
 import javafx.scene.Node;
 import javafx.scene.control.SplitPane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
 
 public class MiddleArea
 {
 
     private SplitPane mainPane;
+    private VBox tableArea;
+    private HistogramController histogramController;
     ExplorerTab explorerTab;
     double dividerPos = 0.2;
 
@@ -21,22 +25,29 @@ public class MiddleArea
         FileListController fileListController,
         FilterViewController filterViewController,
         TableViewController tableViewController,
-        TreeViewController treeViewController
+        TreeViewController treeViewController,
+        HistogramController histogramController,
+        AggregationController aggregationController
     )
     {
-        // ExplorerTab | TableView
+        // ExplorerTab | (Histogram)
+        //             | TableView
         //             |-
         //             | TreeView
 
         mainPane = new SplitPane();
-        explorerTab = new ExplorerTab(fileListController, filterViewController);
+        explorerTab = new ExplorerTab(fileListController, filterViewController, aggregationController);
 
         mainPane.setOrientation(Orientation.HORIZONTAL);
         mainPane.getItems().add(explorerTab.getPane());
 
         SplitPane tablePane = new SplitPane();
         tablePane.setOrientation(Orientation.VERTICAL);
-        tablePane.getItems().add(tableViewController.getView());
+        Node tableView = tableViewController.getView();
+        tableArea = new VBox(tableView);
+        VBox.setVgrow(tableView, Priority.ALWAYS);
+        this.histogramController = histogramController;
+        tablePane.getItems().add(tableArea);
         tablePane.getItems().add(treeViewController.getView());
 
         mainPane.getItems().add(tablePane);
@@ -88,4 +99,19 @@ public class MiddleArea
             return true;
         }
     }
+
+    public void setHistogramVisible(boolean visible)
+    {
+        List<Node> items = tableArea.getChildren();
+        Node histogram = histogramController.getView();
+
+        if (visible && !items.contains(histogram)) {
+            items.add(0, histogram);
+            histogramController.refresh();
+        }
+        else if (!visible) {
+            items.remove(histogram);
+            histogramController.cancel();
+        }
+    }
 }
@@ -0,0 +1,181 @@
+package app;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import app.debug.Metrics;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.util.Duration;
+
+// Live performance figures for the status bar: ingest and filter throughput,
+// row cache hit ratio, heap, GC and FX pulse times. Rates are over the last
+// refresh interval, from the Metrics counters and the JVM's MXBeans. Nothing
+// is sampled and no pulse is timed while the HUD is hidden.
+public class PerfHud {
+    private static final Duration REFRESH = Duration.seconds(1);
+
+    private static final LongAdder fxPulses = Metrics.counter(Metrics.FX_PULSES);
+    private static final LongAdder fxPulseNanos = Metrics.counter(Metrics.FX_PULSE_NANOS);
+
+    private final Label label = new Label();
+    private final Timeline timeline = new Timeline(new KeyFrame(REFRESH, e -> refresh()));
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private Scene scene = null;
+    private boolean showing = false;
+
+    // counters at the previous refresh
+    private Map<String, Long> last = Map.of();
+    private long lastNanos = 0;
+    private long lastGcCount = 0;
+    private long lastGcMillis = 0;
+    // kept while a counter does not move, e.g. the time of the last filter pass
+    private double ingestMBps = 0;
+    private double ingestRowsPerSecond = 0;
+    private double filterMillis = 0;
+    private double filterRowsPerSecond = 0;
+
+    // pulse timing, on the FX thread
+    private long pulseStart = 0;
+    private long pulseMaxNanos = 0;
+    private final Runnable onPrePulse = () -> pulseStart = System.nanoTime();
+    private final Runnable onPostPulse = this::pulseEnded;
+
+    public PerfHud() {
+        timeline.setCycleCount(Animation.INDEFINITE);
+        label.setVisible(false);
+        label.setManaged(false);
+    }
+
+    public Label getView() {
+        return label;
+    }
+
+    public void setScene(Scene scene) {
+        if (showing) {
+            removePulseListeners();
+        }
+        this.scene = scene;
+        if (showing) {
+            addPulseListeners();
+        }
+    }
+
+    public void setShowing(boolean showing) {
+        if (this.showing == showing) {
+            return;
+        }
+        this.showing = showing;
+        label.setVisible(showing);
+        label.setManaged(showing);
+        if (showing) {
+            addPulseListeners();
+            last = Metrics.snapshot();
+            lastNanos = System.nanoTime();
+            lastGcCount = gcCount();
+            lastGcMillis = gcMillis();
+            pulseMaxNanos = 0;
+            label.setText("measuring...");
+            timeline.play();
+        } else {
+            timeline.stop();
+            removePulseListeners();
+        }
+    }
+
+    private void addPulseListeners() {
+        if (scene != null) {
+            scene.addPreLayoutPulseListener(onPrePulse);
+            scene.addPostLayoutPulseListener(onPostPulse);
+        }
+    }
+
+    private void removePulseListeners() {
+        if (scene != null) {
+            scene.removePreLayoutPulseListener(onPrePulse);
+            scene.removePostLayoutPulseListener(onPostPulse);
+        }
+    }
+
+    private void pulseEnded() {
+        long nanos = System.nanoTime() - pulseStart;
+        fxPulses.increment();
+        fxPulseNanos.add(nanos);
+        pulseMaxNanos = Math.max(pulseMaxNanos, nanos);
+    }
+
+    private void refresh() {
+        Map<String, Long> now = Metrics.snapshot();
+        long nanos = System.nanoTime();
+        double seconds = (nanos - lastNanos) / 1e9;
+
+        // ingest: per second of scanning once a chunk is done, per second of wall time while one is scanned
+        long bytes = delta(now, Metrics.INGEST_BYTES);
+        long rows = delta(now, Metrics.INGEST_ROWS);
+        if (bytes > 0) {
+            long scanNanos = delta(now, Metrics.INGEST_NANOS);
+            double scanSeconds = scanNanos > 0 ? scanNanos / 1e9 : seconds;
+            ingestMBps = bytes / 1e6 / scanSeconds;
+            ingestRowsPerSecond = rows / scanSeconds;
+        }
+
+        long passes = delta(now, Metrics.FILTER_PASSES);
+        if (passes > 0) {
+            long filterNanos = delta(now, Metrics.FILTER_NANOS);
+            filterMillis = filterNanos / 1e6 / passes;
+            filterRowsPerSecond = filterNanos == 0 ? 0 : delta(now, Metrics.FILTER_ROWS) * 1e9 / filterNanos;
+        }
+
+        // hit ratio over the interval, over the session when there were no lookups
+        long lookups = delta(now, Metrics.CACHE_LOOKUPS);
+        long misses = delta(now, Metrics.CACHE_MISSES);
+        if (lookups == 0) {
+            lookups = now.getOrDefault(Metrics.CACHE_LOOKUPS, 0L);
+            misses = now.getOrDefault(Metrics.CACHE_MISSES, 0L);
+        }
+        double hitRatio = lookups == 0 ? 0 : 100.0 * (lookups - misses) / lookups;
+
+        long pulses = delta(now, Metrics.FX_PULSES);
+        double pulseMillis = pulses == 0 ? 0 : delta(now, Metrics.FX_PULSE_NANOS) / 1e6 / pulses;
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+
+        label.setText(String.format(
+            "ingest %.1f MB/s %,.0f rows/s | %,d rows | filter %.1f ms %,.0f rows/s | cache %.1f%% hits %,.1f MB | heap %,.0f/%,.0f MB | GC %d, %d ms | pulse %.1f ms, max %.1f ms",
+            ingestMBps, ingestRowsPerSecond,
+            now.getOrDefault(Metrics.INGEST_ROWS, 0L),
+            filterMillis, filterRowsPerSecond,
+            hitRatio, now.getOrDefault(Metrics.CACHE_BYTES, 0L) / 1e6,
+            heap.getUsed() / 1e6, heap.getCommitted() / 1e6,
+            gcCount - lastGcCount, gcMillis - lastGcMillis,
+            pulseMillis, pulseMaxNanos / 1e6));
+
+        last = now;
+        lastNanos = nanos;
+        lastGcCount = gcCount;
+        lastGcMillis = gcMillis;
+        pulseMaxNanos = 0;
+    }
+
+    private long delta(Map<String, Long> now, String name) {
+        return now.getOrDefault(name, 0L) - last.getOrDefault(name, 0L);
+    }
+
+    // summed over all collectors; a collector that cannot tell reports -1
+    private long gcCount() {
+        return collectors.stream().mapToLong(gc -> Math.max(0, gc.getCollectionCount())).sum();
+    }
+
+    private long gcMillis() {
+        return collectors.stream().mapToLong(gc -> Math.max(0, gc.getCollectionTime())).sum();
+    }
+}
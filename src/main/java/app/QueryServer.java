@@ -0,0 +1,354 @@
+package app;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import app.FilterViewController.ActionType;
+import app.FilterViewController.FilterRule;
+import app.FilterViewController.MatchType;
+
+// Read-only HTTP access to the rows already loaded in the viewer, bound to
+// localhost. Requests run against the reader's row index and the current
+// filter engine; rows are read straight from the mapped files and responses
+// are written in chunks as rows are found, never buffered whole.
+//
+//   GET /info                                    files and row count
+//   GET /count?[filter]                          number of matching rows
+//   GET /rows?[filter]&from=0&limit=1000&fields=a,b.c
+//                                                a page of matching rows and the cursor of the next page
+//   GET /row?index=N                             one row as it is in the file
+//   GET /aggregate?[filter]&by=key&value=v&top=20
+//
+//   filter: rules=gui|none (default gui), q=substring, expr=expression
+public class QueryServer {
+    private static final int DEFAULT_PAGE = 1000;
+    private static final int MAX_PAGE = 100_000;
+    private static final int AGGREGATE_TIMEOUT_MINUTES = 10;
+
+    private final JsonLineReader reader;
+    private final Supplier<FilterEngine> engine;
+    private final ObjectMapper mapper = AppSettings.getMapper();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "query-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private HttpServer server;
+
+    // engine supplies the rules currently applied in the viewer
+    public QueryServer(JsonLineReader reader, Supplier<FilterEngine> engine) {
+        this.reader = reader;
+        this.engine = engine;
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/info", handler(this::info));
+        server.createContext("/count", handler(this::count));
+        server.createContext("/rows", handler(this::rows));
+        server.createContext("/row", handler(this::row));
+        server.createContext("/aggregate", handler(this::aggregate));
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private interface Endpoint {
+        void handle(Map<String, String> params, HttpExchange exchange) throws Exception;
+    }
+
+    private HttpHandler handler(Endpoint endpoint) {
+        return exchange -> {
+            // closed only after an error was sent
+            try {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    sendError(exchange, 405, "GET only");
+                    return;
+                }
+                endpoint.handle(parseQuery(exchange.getRequestURI().getRawQuery()), exchange);
+            }
+            catch (IllegalArgumentException e) {
+                fail(exchange, 400, e.getMessage());
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+                fail(exchange, 500, String.valueOf(e.getMessage()));
+            }
+            finally {
+                exchange.close();
+            }
+        };
+    }
+
+    // an error response, unless a 200 was already sent for a streamed body: that body just ends
+    // where it was, without its closing brackets, so the client sees an incomplete document
+    private void fail(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() == -1) {
+            sendError(exchange, status, message);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int fallback) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            ObjectNode error = mapper.createObjectNode().put("error", message);
+            byte[] body = mapper.writeValueAsBytes(error);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        }
+        catch (IOException ignored) {
+            // headers already sent or client gone
+        }
+    }
+
+    private void sendJson(HttpExchange exchange, Object value) throws IOException {
+        byte[] body = mapper.writeValueAsBytes(value);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    // chunked response
+    private OutputStream startStream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        return new BufferedOutputStream(exchange.getResponseBody(), 1 << 16);
+    }
+
+    // the viewer's rules and/or the request's substring and expression, all of which must match
+    private static record RowFilter(FilterEngine rules, String lowerQuery, FilterEngine.CompiledRule expression) {
+        boolean matches(String json, long objIndex) {
+            if (rules != null && rules.hasVisibilityRules() && !rules.isVisible(json, objIndex)) {
+                return false;
+            }
+            if (lowerQuery != null && !SearchJob.containsIgnoreCase(json, lowerQuery)) {
+                return false;
+            }
+            return expression == null || expression.matches(json, objIndex);
+        }
+
+        boolean acceptsAll() {
+            return (rules == null || !rules.hasVisibilityRules()) && lowerQuery == null && expression == null;
+        }
+    }
+
+    private RowFilter filter(Map<String, String> params) {
+        String rules = params.getOrDefault("rules", "gui");
+        if (!rules.equals("gui") && !rules.equals("none")) {
+            throw new IllegalArgumentException("rules must be gui or none");
+        }
+
+        String query = params.get("q");
+        String expr = params.get("expr");
+        FilterEngine.CompiledRule expression = null;
+        if (expr != null && !expr.isBlank()) {
+            FilterRule rule = new FilterRule();
+            rule.action.set(ActionType.include);
+            rule.type.set(MatchType.expr);
+            rule.expression.set(expr);
+            expression = FilterEngine.compile(rule, 0);
+        }
+
+        return new RowFilter(
+            rules.equals("gui") ? engine.get() : null,
+            query == null || query.isEmpty() ? null : query.toLowerCase(),
+            expression);
+    }
+
+    private void info(Map<String, String> params, HttpExchange exchange) throws IOException {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("rows", reader.getAllBounds().size());
+        info.put("rules", engine.get().getRules().size());
+        sendJson(exchange, info);
+    }
+
+    private void count(Map<String, String> params, HttpExchange exchange) throws Exception {
+        RowFilter filter = filter(params);
+        List<LineBounds> rows = reader.getAllBounds();
+        int total = rows.size();
+
+        long matched = total;
+        if (!filter.acceptsAll()) {
+            // slices of the index in parallel; rows added meanwhile are not counted
+            int threads = Background.parallelism();
+            int sliceSize = Math.max(1, (total + threads - 1) / threads);
+            List<Future<Long>> slices = new ArrayList<>();
+            for (int from = 0; from < total; from += sliceSize) {
+                int start = from;
+                int end = Math.min(total, from + sliceSize);
+                slices.add(Background.executor().submit(() -> {
+                    long count = 0;
+                    for (int i = start; i < end; i++) {
+                        LineBounds row = rows.get(i);
+                        if (filter.matches(reader.readString(row), row.objIndex())) {
+                            count++;
+                        }
+                    }
+                    return count;
+                }));
+            }
+
+            matched = 0;
+            for (Future<Long> slice : slices) {
+                matched += slice.get();
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("rows", total);
+        result.put("matched", matched);
+        sendJson(exchange, result);
+    }
+
+    private void rows(Map<String, String> params, HttpExchange exchange) throws IOException {
+        RowFilter filter = filter(params);
+        int from = Math.max(0, intParam(params, "from", 0));
+        int limit = Math.min(MAX_PAGE, Math.max(1, intParam(params, "limit", DEFAULT_PAGE)));
+        String fields = params.get("fields");
+        String[] names = fields == null || fields.isBlank() ? null : fields.split(",");
+        String[][] paths = null;
+        if (names != null) {
+            paths = new String[names.length][];
+            for (int i = 0; i < names.length; i++) {
+                paths[i] = names[i].trim().split("\\.");
+            }
+        }
+
+        List<LineBounds> rows = reader.getAllBounds();
+        int total = rows.size();
+        OutputStream out = startStream(exchange);
+        out.write("{\"rows\":[".getBytes(StandardCharsets.UTF_8));
+
+        // scan until the page is full; "next" is the index to continue from, -1 at the end
+        int found = 0;
+        int index = from;
+        String[] values = paths == null ? null : new String[paths.length];
+        for (; index < total && found < limit; index++) {
+            LineBounds row = rows.get(index);
+            byte[] data = reader.readBytes(row, Integer.MAX_VALUE);
+            String json = filter.acceptsAll() && paths == null ? null : new String(data, StandardCharsets.UTF_8);
+            if (json != null && !filter.matches(json, row.objIndex())) {
+                continue;
+            }
+
+            if (found++ > 0) {
+                out.write(',');
+            }
+            if (paths == null) {
+                out.write(data);
+            } else {
+                Arrays.fill(values, null);
+                Aggregation.extract(json, paths, values);
+                ObjectNode projected = mapper.createObjectNode();
+                projected.put("_index", index);
+                for (int i = 0; i < names.length; i++) {
+                    projected.put(names[i].trim(), values[i]);
+                }
+                out.write(mapper.writeValueAsBytes(projected));
+            }
+        }
+
+        out.write(String.format("],\"next\":%d}", index < total ? index : -1).getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void row(Map<String, String> params, HttpExchange exchange) throws IOException {
+        int index = intParam(params, "index", -1);
+        List<LineBounds> rows = reader.getAllBounds();
+        if (index < 0 || index >= rows.size()) {
+            sendError(exchange, 404, "No row " + index);
+            return;
+        }
+
+        byte[] data = reader.readBytes(rows.get(index), Integer.MAX_VALUE);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, data.length);
+        exchange.getResponseBody().write(data);
+    }
+
+    private void aggregate(Map<String, String> params, HttpExchange exchange) throws Exception {
+        String by = params.get("by");
+        if (by == null || by.isBlank()) {
+            throw new IllegalArgumentException("by is required");
+        }
+        RowFilter filter = filter(params);
+
+        // the live index, filtered by the aggregation's workers; rows added meanwhile are not aggregated
+        CompletableFuture<Aggregation.Result> done = new CompletableFuture<>();
+        Aggregation aggregation = new Aggregation(reader.getAllBounds(), filter.acceptsAll() ? null : filter::matches, false,
+            reader, by.trim(), params.getOrDefault("value", "").trim(), intParam(params, "top", 20), result -> {
+                if (result.done()) {
+                    done.complete(result);
+                }
+            }, done::completeExceptionally);
+        aggregation.start();
+        try {
+            sendJson(exchange, done.get(AGGREGATE_TIMEOUT_MINUTES, TimeUnit.MINUTES));
+        }
+        catch (TimeoutException e) {
+            aggregation.cancel();
+            sendError(exchange, 504, "Aggregation timed out");
+        }
+    }
+}
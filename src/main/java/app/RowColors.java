@@ -0,0 +1,47 @@
+package app;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Highlight color index of each row by objIndex, filled in as rows are
+// rendered or prefetched. A byte per row, in pages allocated on first write,
+// so that only the regions that were looked at take memory. Writes from
+// several threads are safe: a row always gets the same value.
+public class RowColors {
+    public static final int UNKNOWN = -1;
+
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MAX_PAGES = 1 << 15;       // 2^31 rows
+    // stored as colorIndex + 1, 0 is a row not evaluated yet
+    private static final byte NOT_SET = 0;
+
+    private final AtomicReferenceArray<byte[]> pages = new AtomicReferenceArray<>(MAX_PAGES);
+
+    // the FilterEngine.colorIndex of the row, UNKNOWN if not evaluated yet
+    public int get(long objIndex) {
+        byte[] page = page(objIndex);
+        if (page == null) {
+            return UNKNOWN;
+        }
+        byte value = page[(int) (objIndex & (PAGE_SIZE - 1))];
+        return value == NOT_SET ? UNKNOWN : (value & 0xFF) - 1;
+    }
+
+    public void set(long objIndex, int colorIndex) {
+        int pageIndex = (int) (objIndex >>> PAGE_BITS);
+        if (pageIndex >= MAX_PAGES) {
+            return;
+        }
+        byte[] page = pages.get(pageIndex);
+        if (page == null) {
+            pages.compareAndSet(pageIndex, null, new byte[PAGE_SIZE]);
+            page = pages.get(pageIndex);
+        }
+        page[(int) (objIndex & (PAGE_SIZE - 1))] = (byte) (colorIndex + 1);
+    }
+
+    private byte[] page(long objIndex) {
+        long pageIndex = objIndex >>> PAGE_BITS;
+        return pageIndex < MAX_PAGES ? pages.get((int) pageIndex) : null;
+    }
+}
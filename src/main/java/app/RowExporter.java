@@ -0,0 +1,152 @@
+package app;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Writes rows to a JSONL file by copying their bytes from the source files.
+// Rows that follow each other in the source with only a line break between
+// them are coalesced into one range, and every range is moved with
+// FileChannel.transferTo, so the data is neither decoded nor copied through
+// the heap. Rows are written byte for byte, so rows of a pretty-printed
+// source keep their line breaks and the output is then not strict JSONL.
+// The target must not be one of the loaded files, which are mapped while the
+// export reads them. Rows are written to a temporary file next to the target,
+// which replaces the target only once the export is complete; a cancelled or
+// failed export leaves the target as it was.
+public class RowExporter {
+    private static final int MAX_LINE_GAP = 16;
+    private static final long PUBLISH_INTERVAL_NANOS = 200_000_000L;
+    private static final byte[] NEWLINE = { '\n' };
+
+    public static record Progress(long rows, long totalRows, long bytes, long ranges, long elapsedNanos, boolean done) {
+        public double bytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s / %s rows, %.1f MB, %.1f MB/s",
+                SearchJob.formatCompact(rows), SearchJob.formatCompact(totalRows),
+                bytes / 1e6, bytesPerSecond() / 1e6);
+        }
+    }
+
+    private final List<LineBounds> rows;
+    private final JsonLineReader reader;
+    private final Consumer<Progress> onProgress;
+    private volatile boolean cancelled = false;
+
+    // rows in output order; onProgress is called on the exporting thread
+    public RowExporter(List<LineBounds> rows, JsonLineReader reader, Consumer<Progress> onProgress) {
+        this.rows = rows;
+        this.reader = reader;
+        this.onProgress = onProgress;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    // the rows written up to a cancel are in the returned Progress, but the target is not written then
+    public Progress export(Path target) throws IOException {
+        for (Path loaded : reader.filePaths()) {
+            if (Files.exists(target) && Files.isSameFile(target, loaded)) {
+                throw new IOException("Cannot export into a loaded file: " + target);
+            }
+        }
+
+        long started = System.nanoTime();
+        long lastPublish = started;
+        long bytes = 0;
+        long ranges = 0;
+        Map<Path, FileChannel> sources = new HashMap<>();
+        // hidden and unique, so that concurrent exports to the same target do not meet
+        Path temp = target.resolveSibling("." + target.getFileName() + "." + System.nanoTime() + ".part");
+
+        try {
+            Progress done;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                int i = 0;
+                while (i < rows.size() && !cancelled) {
+                    // extend the range while the next row directly follows in the source
+                    LineBounds first = rows.get(i);
+                    LineBounds last = first;
+                    int next = i + 1;
+                    while (next < rows.size() && reader.isLineBreakBetween(last, rows.get(next), MAX_LINE_GAP)) {
+                        last = rows.get(next++);
+                    }
+
+                    Path path = reader.filePath(first);
+                    FileChannel source = sources.get(path);
+                    if (source == null) {
+                        source = FileChannel.open(path, StandardOpenOption.READ);
+                        sources.put(path, source);
+                    }
+
+                    long from = reader.fileOffset(first);
+                    long length = reader.fileOffset(last) + (last.end() - last.start()) - from;
+                    transfer(source, from, length, out);
+                    out.write(ByteBuffer.wrap(NEWLINE));
+                    bytes += length + 1;
+                    ranges++;
+                    i = next;
+
+                    long now = System.nanoTime();
+                    if (now - lastPublish > PUBLISH_INTERVAL_NANOS) {
+                        lastPublish = now;
+                        onProgress.accept(new Progress(i, rows.size(), bytes, ranges, now - started, false));
+                    }
+                }
+
+                done = new Progress(i, rows.size(), bytes, ranges, System.nanoTime() - started, true);
+            }
+
+            if (!cancelled) {
+                replace(temp, target);
+                onProgress.accept(done);
+            }
+            return done;
+        }
+        finally {
+            for (FileChannel source : sources.values()) {
+                source.close();
+            }
+            // left only by a cancelled or failed export
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void replace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void transfer(FileChannel source, long from, long length, FileChannel out) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long moved = source.transferTo(from + done, length - done, out);
+            if (moved <= 0) {
+                throw new IOException("Source ended early at " + (from + done));
+            }
+            done += moved;
+        }
+    }
+}
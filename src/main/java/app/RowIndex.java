@@ -0,0 +1,48 @@
+package app;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+// Append-only list of row bounds that other threads can read while rows are
+// being added. Rows live in fixed-size segments that are never reallocated;
+// add() fills the slot before publishing the new size through a volatile
+// write, so any index below size() is safe to read from any thread.
+// Only one thread may add.
+public class RowIndex extends AbstractList<LineBounds> implements RandomAccess {
+    private static final int SEGMENT_BITS = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private volatile LineBounds[][] segments = new LineBounds[16][];
+    private volatile int size = 0;
+
+    @Override
+    public boolean add(LineBounds row) {
+        int index = size;
+        int segment = index >>> SEGMENT_BITS;
+        LineBounds[][] current = segments;
+        if (segment == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[segment] == null) {
+            current[segment] = new LineBounds[SEGMENT_SIZE];
+        }
+        current[segment][index & (SEGMENT_SIZE - 1)] = row;
+        segments = current;
+        size = index + 1;
+        return true;
+    }
+
+    @Override
+    public LineBounds get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return segments[index >>> SEGMENT_BITS][index & (SEGMENT_SIZE - 1)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,139 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.TableView;
+import javafx.scene.control.skin.VirtualFlow;
+
+// Parses the rows around the table's viewport on a background thread before
+// cells ask for them. After each layout that moved the viewport, the rows
+// ahead in the scroll direction are loaded, as many as the scroll speed
+// would bring on screen in LOOKAHEAD_SECONDS, plus a screenful behind; the
+// rows past those only have their mapped pages touched, so that the page
+// cache is warm when they are parsed. A new viewport cancels the previous
+// prefetch.
+public class RowPrefetcher {
+    private static final double LOOKAHEAD_SECONDS = 0.5;
+    private static final int MAX_DEPTH = 4096;
+    // weight of the latest viewport move in the scroll velocity
+    private static final double VELOCITY_SMOOTHING = 0.3;
+
+    private final TableView<LineBounds> table;
+    private final Consumer<LineBounds> load;
+    private final Consumer<LineBounds> touch;
+    private final AtomicLong generation = new AtomicLong();
+    private final Runnable afterLayout = this::afterLayout;
+
+    private VirtualFlow<?> flow = null;
+    private boolean moved = false;
+    private int lastFirst = -1;
+    private long lastNanos = 0;
+    private double velocity = 0;    // rows per second, negative when scrolling up
+
+    // load parses a row into the cache and touch reads its pages; both run on background threads
+    public RowPrefetcher(TableView<LineBounds> table, Consumer<LineBounds> load, Consumer<LineBounds> touch) {
+        this.table = table;
+        this.load = load;
+        this.touch = touch;
+
+        table.skinProperty().addListener((obs, oldVal, newVal) -> {
+            if (table.lookup(".virtual-flow") instanceof VirtualFlow<?> virtualFlow) {
+                flow = virtualFlow;
+                flow.positionProperty().addListener((o, oldPosition, newPosition) -> moved = true);
+            }
+        });
+        table.itemsProperty().addListener((obs, oldVal, newVal) -> moved = true);
+        table.sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (oldScene != null) {
+                oldScene.removePostLayoutPulseListener(afterLayout);
+            }
+            if (newScene != null) {
+                newScene.addPostLayoutPulseListener(afterLayout);
+            }
+        });
+    }
+
+    // the visible cells are only up to date after layout
+    private void afterLayout() {
+        if (!moved || flow == null) {
+            return;
+        }
+        moved = false;
+
+        IndexedCell<?> firstCell = flow.getFirstVisibleCell();
+        IndexedCell<?> lastCell = flow.getLastVisibleCell();
+        if (firstCell == null || lastCell == null) {
+            return;
+        }
+        prefetch(firstCell.getIndex(), lastCell.getIndex());
+    }
+
+    // called again whenever the rows change, e.g. after filtering
+    public void invalidate() {
+        moved = true;
+        generation.incrementAndGet();
+    }
+
+    private void prefetch(int first, int last) {
+        long now = System.nanoTime();
+        if (lastFirst >= 0 && now > lastNanos) {
+            double current = (first - lastFirst) * 1e9 / (now - lastNanos);
+            velocity += VELOCITY_SMOOTHING * (current - velocity);
+        }
+        lastFirst = first;
+        lastNanos = now;
+
+        List<LineBounds> items = table.getItems();
+        int visible = Math.max(1, last - first + 1);
+        int depth = (int) Math.min(MAX_DEPTH, visible * 2 + Math.abs(velocity) * LOOKAHEAD_SECONDS);
+        boolean down = velocity >= 0;
+
+        // parse order: the viewport itself, then ahead, then a screenful behind
+        List<LineBounds> parse = new ArrayList<>();
+        List<LineBounds> warm = new ArrayList<>();
+        addAfter(parse, items, first, visible);
+        if (down) {
+            addAfter(parse, items, last + 1, depth);
+            addBefore(parse, items, first, visible);
+            addAfter(warm, items, last + 1 + depth, depth);
+        } else {
+            addBefore(parse, items, first, depth);
+            addAfter(parse, items, last + 1, visible);
+            addBefore(warm, items, first - depth, depth);
+        }
+
+        long current = generation.incrementAndGet();
+        Background.submit(() -> {
+            for (LineBounds row : parse) {
+                if (generation.get() != current) {
+                    return;
+                }
+                load.accept(row);
+            }
+            for (LineBounds row : warm) {
+                if (generation.get() != current) {
+                    return;
+                }
+                touch.accept(row);
+            }
+        });
+    }
+
+    // count rows from index on, as far as there are rows
+    private static void addAfter(List<LineBounds> out, List<LineBounds> items, int index, int count) {
+        for (int i = Math.max(0, index); i < Math.min(items.size(), index + count); i++) {
+            out.add(items.get(i));
+        }
+    }
+
+    // count rows before index, the nearest first
+    private static void addBefore(List<LineBounds> out, List<LineBounds> items, int index, int count) {
+        for (int i = Math.min(items.size(), index) - 1; i >= Math.max(0, index - count); i--) {
+            out.add(items.get(i));
+        }
+    }
+}
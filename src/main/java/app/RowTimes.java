@@ -0,0 +1,49 @@
+package app;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Timestamps of one field by objIndex, filled in as rows are read, so that
+// the histogram reads a row for its field only once. Like RowColors, in pages
+// allocated on first write; a row always gets the same value, so writes from
+// several threads are safe.
+public class RowTimes {
+    // not extracted yet; a row without the field is TimeHistogram.MISSING
+    public static final long UNKNOWN = Long.MIN_VALUE + 1;
+
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MAX_PAGES = 1 << 15;       // 2^31 rows
+
+    private final String field;
+    private final AtomicReferenceArray<long[]> pages = new AtomicReferenceArray<>(MAX_PAGES);
+
+    public RowTimes(String field) {
+        this.field = field;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public long get(long objIndex) {
+        long pageIndex = objIndex >>> PAGE_BITS;
+        long[] page = pageIndex < MAX_PAGES ? pages.get((int) pageIndex) : null;
+        return page == null ? UNKNOWN : page[(int) (objIndex & (PAGE_SIZE - 1))];
+    }
+
+    public void set(long objIndex, long time) {
+        int pageIndex = (int) (objIndex >>> PAGE_BITS);
+        if (pageIndex >= MAX_PAGES) {
+            return;
+        }
+        long[] page = pages.get(pageIndex);
+        if (page == null) {
+            long[] created = new long[PAGE_SIZE];
+            Arrays.fill(created, UNKNOWN);
+            pages.compareAndSet(pageIndex, null, created);
+            page = pages.get(pageIndex);
+        }
+        page[(int) (objIndex & (PAGE_SIZE - 1))] = time;
+    }
+}
@@ -0,0 +1,128 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import app.FilterViewController.MatchType;
+
+// Live statistics of a filter rule, kept with the rule across rule set
+// changes and reset when its type or expression changes. Every evaluation is
+// counted, and so are the rows the rule decided (it was the last match); one
+// evaluation in SAMPLE_EVERY is timed, which is enough for the planner's cost
+// estimate and the time columns and keeps System.nanoTime off most evaluations.
+public class RuleStats {
+    private static final int SAMPLE_EVERY = 16;
+    // below this, estimates come from the rule type
+    private static final long MIN_EVALS = 256;
+    private static final long MIN_SAMPLES = 16;
+    // regex rules: rows over the step budget that are kept for the report
+    private static final int MAX_REPORTED_ROWS = 10;
+
+    private final LongAdder evals = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder sampledNanos = new LongAdder();
+    // racy on purpose: a lost increment only moves a sample
+    private int tick = 0;
+    // objIndexes of the first rows that ran out of regex steps, guarded by itself
+    private final List<Long> overBudgetRows = new ArrayList<>();
+    private volatile int overBudget = 0;
+
+    public boolean sampleNext() {
+        return tick++ % SAMPLE_EVERY == 0;
+    }
+
+    public void add(boolean hit) {
+        evals.increment();
+        if (hit) {
+            hits.increment();
+        }
+    }
+
+    public void addSample(long nanos, boolean hit) {
+        add(hit);
+        samples.increment();
+        sampledNanos.add(nanos);
+    }
+
+    // the rule was the last match of a row
+    public void addWin() {
+        wins.increment();
+    }
+
+    // a regex ran out of steps on the row, which counts as not matching; returns true the first time
+    public boolean addOverBudget(long objIndex) {
+        synchronized (overBudgetRows) {
+            if (overBudgetRows.size() < MAX_REPORTED_ROWS) {
+                overBudgetRows.add(objIndex);
+            }
+            return overBudget++ == 0;
+        }
+    }
+
+    public int overBudget() {
+        return overBudget;
+    }
+
+    public List<Long> overBudgetRows() {
+        synchronized (overBudgetRows) {
+            return List.copyOf(overBudgetRows);
+        }
+    }
+
+    public void reset() {
+        synchronized (overBudgetRows) {
+            overBudgetRows.clear();
+            overBudget = 0;
+        }
+        evals.reset();
+        hits.reset();
+        wins.reset();
+        samples.reset();
+        sampledNanos.reset();
+    }
+
+    public long evals() {
+        return evals.sum();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long wins() {
+        return wins.sum();
+    }
+
+    // estimated time spent in all evaluations, from the timed ones
+    public double totalNanos() {
+        long count = samples.sum();
+        return count == 0 ? 0 : (double) sampledNanos.sum() / count * evals.sum();
+    }
+
+    // mean nanoseconds per evaluation, a guess by type until enough were timed
+    public double cost(MatchType type) {
+        long count = samples.sum();
+        if (count < MIN_SAMPLES) {
+            return switch (type) {
+                case case_sensitive -> 100;
+                case case_insensitive -> 300;
+                case regex -> 3_000;
+                case expr -> 30_000;
+            };
+        }
+        return (double) sampledNanos.sum() / count;
+    }
+
+    // fraction of evaluated rows the rule matched, 0.5 until enough were evaluated
+    public double selectivity() {
+        long count = evals.sum();
+        return count < MIN_EVALS ? 0.5 : (double) hits.sum() / count;
+    }
+
+    public boolean measured() {
+        return samples.sum() >= MIN_SAMPLES;
+    }
+}
@@ -0,0 +1,150 @@
+package app;
+
+import java.util.List;
+
+import javafx.application.Platform;
+
+// Background substring search over a snapshot of the visible rows.
+// Matching rows are recorded by objIndex in a MatchBitmap which cells and
+// next/previous navigation consult instead of re-reading row text.
+public class SearchJob {
+    private static final int PUBLISH_ROWS = 4096;
+    private static final long PUBLISH_INTERVAL_NANOS = 100_000_000L;
+
+    private final String query;
+    private final List<LineBounds> rows;
+    private final JsonLineReader reader;
+    private final MatchBitmap bitmap;
+    private final Runnable onProgress;
+
+    private volatile boolean cancelled = false;
+    private volatile boolean done = false;
+    private volatile long scannedLimit = 0;   // objIndex bound (exclusive) of published rows
+    private volatile int scannedRows = 0;
+    private volatile int matchCount = 0;
+
+    // rows must be sorted by objIndex; onProgress runs on the FX thread
+    public SearchJob(String query, List<LineBounds> rows, JsonLineReader reader, Runnable onProgress) {
+        this.query = query;
+        this.rows = rows;
+        this.reader = reader;
+        this.onProgress = onProgress;
+
+        long maxIndex = rows.isEmpty() ? 0 : rows.get(rows.size() - 1).objIndex() + 1;
+        this.bitmap = new MatchBitmap((int) maxIndex);
+    }
+
+    public void start() {
+        Background.submit(this::run);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private void run() {
+        long lastPublish = System.nanoTime();
+        int count = 0;
+
+        for (int i = 0; i < rows.size(); i++) {
+            if (cancelled) {
+                return;
+            }
+
+            LineBounds row = rows.get(i);
+            String text = reader.readString(row);
+            if (text != null && containsIgnoreCase(text, query)) {
+                bitmap.set((int) row.objIndex());
+                count++;
+            }
+
+            if ((i + 1) % PUBLISH_ROWS == 0) {
+                matchCount = count;
+                scannedRows = i + 1;
+                scannedLimit = row.objIndex() + 1;
+
+                long now = System.nanoTime();
+                if (now - lastPublish > PUBLISH_INTERVAL_NANOS) {
+                    lastPublish = now;
+                    publish();
+                }
+            }
+        }
+
+        matchCount = count;
+        scannedRows = rows.size();
+        scannedLimit = Long.MAX_VALUE;
+        done = true;
+        publish();
+    }
+
+    private void publish() {
+        Platform.runLater(() -> {
+            if (!cancelled) {
+                onProgress.run();
+            }
+        });
+    }
+
+    public boolean isMatch(LineBounds row) {
+        return row != null && row.objIndex() < scannedLimit && bitmap.get(row.objIndex());
+    }
+
+    // objIndex of the first match at or after from, -1 if none found so far
+    public long nextMatch(long from) {
+        long limit = scannedLimit;
+        int found = bitmap.nextSetBit(from);
+        return found >= 0 && found < limit ? found : -1;
+    }
+
+    // objIndex of the last match at or before from, -1 if none found so far
+    public long previousMatch(long from) {
+        return bitmap.previousSetBit(Math.min(from, scannedLimit - 1));
+    }
+
+    public String getStatus() {
+        String status = String.format("%,d / %s matches", matchCount, formatCompact(rows.size()));
+        if (!done && !rows.isEmpty()) {
+            status += String.format(" (%d%%)", (int) (100L * scannedRows / rows.size()));
+        }
+        return status;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public static String formatCompact(long value) {
+        if (value < 1_000) return String.valueOf(value);
+        if (value < 1_000_000) return String.format("%.1fK", value / 1e3);
+        if (value < 1_000_000_000) return String.format("%.1fM", value / 1e6);
+        return String.format("%.1fG", value / 1e9);
+    }
+
+    // lowerQuery must already be lower case
+    public static boolean containsIgnoreCase(String text, String lowerQuery) {
+        return indexOfIgnoreCase(text, lowerQuery, 0) >= 0;
+    }
+
+    // like indexOf, but case-insensitive and without lower-casing text; offsets stay valid for text
+    public static int indexOfIgnoreCase(String text, String lowerQuery, int from) {
+        int length = lowerQuery.length();
+        if (length == 0) {
+            return from <= text.length() ? Math.max(from, 0) : -1;
+        }
+
+        char first = lowerQuery.charAt(0);
+        char firstUpper = Character.toUpperCase(first);
+        int last = text.length() - length;
+        for (int i = Math.max(from, 0); i <= last; i++) {
+            char c = text.charAt(i);
+            if (c != first && c != firstUpper && Character.toLowerCase(c) != first) {
+                continue;
+            }
+            if (text.regionMatches(true, i + 1, lowerQuery, 1, length - 1)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,142 @@
+package app;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import app.debug.TraceLogger;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+
+// Notices when the FX application thread stops responding and records where
+// it is busy. The FX thread is alive while it runs pulses and a heartbeat the
+// watchdog keeps posting with runLater; once neither happened for the
+// threshold, its stack is sampled until the heartbeat runs again. Each stall
+// is then written to the log as the app methods it was spent in and as
+// collapsed stacks (one "frame;frame;... count" line per stack, the input of
+// flamegraph.pl), and added to the trace when tracing is on.
+public class StallWatchdog {
+    private static final long HEARTBEAT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int TOP_METHODS = 5;
+
+    private final Thread fxThread;
+    private final long thresholdNanos;
+    private final Path log;
+
+    private volatile long lastPulse = 0;
+    private volatile boolean beatPending = false;
+    private boolean reported = false;
+
+    // created on the FX thread
+    public StallWatchdog(Scene scene, long thresholdMillis, Path log) {
+        this.fxThread = Thread.currentThread();
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.log = log;
+        scene.addPostLayoutPulseListener(() -> lastPulse = System.nanoTime());
+    }
+
+    public void start() {
+        Thread thread = new Thread(this::watch, "fx-stall-watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch() {
+        while (true) {
+            long posted = System.nanoTime();
+            beatPending = true;
+            Platform.runLater(() -> beatPending = false);
+
+            // the FX thread is busy since the later of the heartbeat and its last pulse
+            Map<String, Integer> stacks = new HashMap<>();
+            int samples = 0;
+            long busySince = posted;
+            while (beatPending) {
+                LockSupport.parkNanos(SAMPLE_NANOS);
+                busySince = Math.max(posted, lastPulse);
+                if (beatPending && System.nanoTime() - busySince >= thresholdNanos) {
+                    stacks.merge(collapse(fxThread.getStackTrace()), 1, Integer::sum);
+                    samples++;
+                }
+            }
+            if (samples > 0) {
+                report(System.nanoTime() - busySince, samples, stacks);
+            }
+
+            LockSupport.parkNanos(HEARTBEAT_NANOS);
+        }
+    }
+
+    // frames from the thread's root to the sampled one
+    private static String collapse(StackTraceElement[] stack) {
+        StringBuilder out = new StringBuilder();
+        for (int i = stack.length - 1; i >= 0; i--) {
+            if (out.length() > 0) {
+                out.append(';');
+            }
+            out.append(stack[i].getClassName()).append('.').append(stack[i].getMethodName());
+        }
+        return out.toString();
+    }
+
+    // the innermost frame of our own code in a collapsed stack, the innermost frame if there is none
+    private static String culprit(String stack) {
+        String[] frames = stack.split(";");
+        for (int i = frames.length - 1; i >= 0; i--) {
+            if (frames[i].startsWith("app.") && !frames[i].startsWith("app.debug.")) {
+                return frames[i];
+            }
+        }
+        return frames.length == 0 ? "?" : frames[frames.length - 1];
+    }
+
+    private void report(long nanos, int samples, Map<String, Integer> stacks) {
+        Map<String, Integer> culprits = new HashMap<>();
+        stacks.forEach((stack, count) -> culprits.merge(culprit(stack), count, Integer::sum));
+        List<Map.Entry<String, Integer>> top = culprits.entrySet().stream()
+            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+            .limit(TOP_METHODS)
+            .toList();
+
+        StringBuilder summary = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : top) {
+            summary.append(String.format("%s %d%%; ", entry.getKey(), 100 * entry.getValue() / samples));
+        }
+        summary.setLength(Math.max(0, summary.length() - 2));
+
+        StringBuilder collapsed = new StringBuilder();
+        stacks.entrySet().stream()
+            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+            .forEach(entry -> collapsed.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n'));
+
+        long millis = nanos / 1_000_000;
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%s FX thread stalled %d ms, %d samples: %s%n",
+            LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), millis, samples, summary));
+        text.append(collapsed).append('\n');
+        try {
+            Files.writeString(log, text, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (!reported) {
+            reported = true;
+            System.err.println("FX thread stalled " + millis + " ms, stalls are logged to " + log.toAbsolutePath());
+        }
+
+        TraceLogger.complete("fxStall", nanos / 1000, Map.of(
+            "samples", String.valueOf(samples),
+            "top", summary.toString(),
+            "stacks", collapsed.toString()));
+    }
+}
@@ -1,23 +1,29 @@
 package app;
 
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
 import app.FilterViewController.FilterRule;
 import app.debug.ArgBuilder;
+import app.debug.CacheMissEvent;
+import app.debug.FilterPassEvent;
+import app.debug.Metrics;
+import app.debug.SlowCellEvent;
 import app.debug.Trace;
 import app.debug.TraceScope;
 import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
 import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -36,25 +42,48 @@ public class TableViewController {
         FULL, TITLE,
     }
 
-    private static record CacheItem(JsonNode node, String string) {}
+    // huge records keep a tape and only the head of their text instead of a Jackson tree
+    private static record CacheItem(JsonNode node, String string, JsonTape tape) {}
+
+    // the rules and the highlight colors evaluated with them, replaced together so that
+    // a thread never stores or looks up a color of one rule set with the other
+    static record Filters(FilterEngine engine, RowColors colors) {}
+
+    private static final int HUGE_RECORD_BYTES = 16 << 20;
+    private static final int TAPE_FIELD_DECODE_LIMIT = 1 << 20;
+
+    private static final LongAdder filterPasses = Metrics.counter(Metrics.FILTER_PASSES);
+    private static final LongAdder filterRows = Metrics.counter(Metrics.FILTER_ROWS);
+    private static final LongAdder filterNanos = Metrics.counter(Metrics.FILTER_NANOS);
+    private static final LongAdder cacheLookups = Metrics.counter(Metrics.CACHE_LOOKUPS);
+    private static final LongAdder cacheMisses = Metrics.counter(Metrics.CACHE_MISSES);
+    private static final LongAdder cacheBytes = Metrics.counter(Metrics.CACHE_BYTES);
 
     private TableView<LineBounds> table = new TableView<>();
+    private VBox view = null;
     private JsonLineReader jsonLineReader = null;
 
-    private final Map<LineBounds, Color> highlightMap = new HashMap<>();
     private ObservableList<LineBounds> allEntries = FXCollections.observableArrayList();
     private final FilteredList<LineBounds> filteredEntries = new FilteredList<>(allEntries, e -> true);
 
     private TreeViewController treeController;
     private DateTimeFormatter formatter = java.time.format.DateTimeFormatter.ofPattern("u-MM-dd hh:mm:ss");
     private String searchTerm = null;
+    private SearchJob searchJob = null;
+    private final ReadOnlyStringWrapper searchStatus = new ReadOnlyStringWrapper("");
     private Map<String, TableColumn<LineBounds, ?>> columnMap = new LinkedHashMap<>();
+    private final ColumnDiscovery columnDiscovery = new ColumnDiscovery();
     private TableColumn<LineBounds, String> valueColumn;
     private TableColumn<LineBounds, Long> numberColumn;
     private Set<Integer> disabledFiles = new HashSet<>();
-    private List<FilterRule> filterRules = null;
-    private final Map<LineBounds, CacheItem> cache = new HashMap<>();
+    // read by the query server and the prefetcher; colors of the rows rendered or prefetched so far
+    private volatile Filters filters = new Filters(FilterEngine.of(null), new RowColors());
+    private MatchBitmap rowFilter = null;
+    // filled on the FX thread by cells and in the background by the prefetcher
+    private final Map<LineBounds, CacheItem> cache = new ConcurrentHashMap<>();
+    private final RowPrefetcher prefetcher;
     private int maxStringLength = 256;
+    private Runnable onFiltersApplied = null;
 
     public TableViewController(TreeViewController treeController) {
         this.treeController = treeController;
@@ -84,32 +113,130 @@ public class TableViewController {
             {
                 // table.refresh();  // force colors re-evaluation
                 if (newVal != null) {
-                    this.getNode(newVal, null).ifPresent(treeController::setObject);
+                    this.getCacheItem(newVal).ifPresent(item -> {
+                        if (item.tape() != null) {
+                            treeController.setTape(item.tape());
+                        } else if (item.node() != null) {
+                            treeController.setObject(item.node());
+                        }
+                    });
                 }
             }
         });
 
         table.setItems(filteredEntries);
         filteredEntries.setPredicate(row -> this.filterPredicate(row));
+
+        prefetcher = new RowPrefetcher(table, this::prefetch, row -> {
+            JsonLineReader reader = this.jsonLineReader;
+            if (reader != null) {
+                reader.touch(row);
+            }
+        });
     }
 
     private void forceFilterUpdate()
     {
+        prefetcher.invalidate();
+        FilterPassEvent event = new FilterPassEvent();
+        event.start();
+        long start = System.nanoTime();
         filteredEntries.setPredicate(row -> this.filterPredicate(row));
+        filterNanos.add(System.nanoTime() - start);
+        filterRows.add(allEntries.size());
+        filterPasses.increment();
+        event.commit(filters.engine().getRules().size(), allEntries.size(), filteredEntries.size());
+        restartSearch();
+        if (onFiltersApplied != null) {
+            onFiltersApplied.run();
+        }
+    }
+
+    public void setOnFiltersApplied(Runnable onFiltersApplied) {
+        this.onFiltersApplied = onFiltersApplied;
+    }
+
+    // snapshot of the visible rows, sorted by objIndex
+    public List<LineBounds> getVisibleRows() {
+        return List.copyOf(filteredEntries);
+    }
+
+    public FilterEngine getFilterEngine() {
+        return filters.engine();
+    }
+
+    // the current rules with the colors evaluated so far, which others may add to
+    Filters getFilters() {
+        return filters;
+    }
+
+    public JsonLineReader getReader() {
+        return jsonLineReader;
     }
 
     public void setSearchString(String query) {
         searchTerm = query;
-        forceFilterUpdate();
+        restartSearch();
+    }
+
+    public ReadOnlyStringProperty searchStatusProperty() {
+        return searchStatus.getReadOnlyProperty();
+    }
+
+    private void restartSearch() {
+        if (searchJob != null) {
+            searchJob.cancel();
+            searchJob = null;
+        }
+
+        if (searchTerm == null || searchTerm.isEmpty() || jsonLineReader == null) {
+            searchStatus.set("");
+            table.refresh();
+            return;
+        }
+
+        // filteredEntries keeps allEntries order, so the snapshot is sorted by objIndex
+        SearchJob job = new SearchJob(searchTerm.toLowerCase(), List.copyOf(filteredEntries), jsonLineReader, () -> {
+            if (searchJob != null) {
+                searchStatus.set(searchJob.getStatus());
+                table.refresh();
+            }
+        });
+        searchJob = job;
+        searchStatus.set(job.getStatus());
+        table.refresh();
+        job.start();
     }
 
     @Trace
     private Optional<CacheItem> getCacheItem(LineBounds bounds) {
         // return Optional.empty();
+        if (bounds == null) {
+            return Optional.empty();
+        }
+        cacheLookups.increment();
         return Optional.ofNullable(cache.computeIfAbsent(bounds, b -> {
+            cacheMisses.increment();
             try ( TraceScope ignoredInner = new TraceScope("getCacheItemInner",
                 ArgBuilder.of().putLong("obj", bounds.objIndex()).build()))
             {
+                CacheMissEvent event = new CacheMissEvent();
+                event.start();
+                if (b != null && b.end() - b.start() > HUGE_RECORD_BYTES) {
+                    try {
+                        CacheItem item = new CacheItem(null, this.jsonLineReader.readString(b, maxStringLength * 4), this.jsonLineReader.buildTape(b));
+                        cacheBytes.add(item.string().length());
+                        return item;
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                        return null;
+                    }
+                    finally {
+                        event.commit(b.objIndex(), b.end() - b.start(), true);
+                    }
+                }
+
                 String str = this.jsonLineReader.getString(b);
                 if (b == null || str == null || str.isEmpty()) {
                     return null;
@@ -117,16 +244,48 @@ public class TableViewController {
 
                 try {
                     JsonNode jsonNode = AppSettings.getMapper().readTree(str);
-                    return new CacheItem(jsonNode, str);
+                    cacheBytes.add(b.end() - b.start());
+                    return new CacheItem(jsonNode, str, null);
                 }
                 catch (Exception e) {
                     e.printStackTrace();
                     return null;
                 }
+                finally {
+                    event.commit(b.objIndex(), b.end() - b.start(), false);
+                }
             }
         }));
     }
 
+    // parses a row into the cache and works out its color ahead of the cells, on a background
+    // thread; huge records are left to the cells
+    private void prefetch(LineBounds row) {
+        JsonLineReader reader = this.jsonLineReader;
+        if (reader == null || row.end() - row.start() > HUGE_RECORD_BYTES) {
+            return;
+        }
+
+        // readString: the reader's own cache is not thread-safe
+        CacheItem cached = cache.get(row);
+        String str = cached != null ? cached.string() : reader.readString(row);
+        if (str.isEmpty()) {
+            return;
+        }
+        if (cached == null) {
+            try {
+                JsonNode jsonNode = AppSettings.getMapper().readTree(str);
+                if (cache.putIfAbsent(row, new CacheItem(jsonNode, str, null)) == null) {
+                    cacheBytes.add(row.end() - row.start());
+                }
+            }
+            catch (Exception e) {
+                // malformed: the cell that shows it reports the error
+            }
+        }
+        rowColor(row, str);
+    }
+
     @Trace
     private Optional<String> getString(LineBounds bounds, String field, StringType type) {
         Optional<CacheItem> node = this.getCacheItem(bounds);
@@ -142,17 +301,34 @@ public class TableViewController {
 
         if (field != null) {
             return node
-                .filter(it -> it.node() != null)
-                .map(it -> it.node().findValue(field))
-                .map(JsonNode::toString)
+                .filter(it -> it.node() != null || it.tape() != null)
+                .map(it -> it.tape() != null ? tapeFieldString(it.tape(), field) : it.node().findValue(field))
+                .map(Object::toString)
                 .map(cutString);
         }
 
+        if (type == StringType.FULL && node.map(it -> it.tape() != null).orElse(false)) {
+            // only the head of huge records is cached
+            return Optional.ofNullable(this.jsonLineReader.readString(bounds));
+        }
+
         return node
             .map(it -> it.string())
             .map(cutString);
     }
 
+    // JSON text of a field of a huge record, raw source text if the value itself is large
+    private String tapeFieldString(JsonTape tape, String field) {
+        int token = tape.findValue(tape.root(), field);
+        if (token < 0) {
+            return null;
+        }
+        if (tape.end(token) - tape.start(token) > TAPE_FIELD_DECODE_LIMIT) {
+            return tape.text(token, maxStringLength * 4);
+        }
+        return tape.decode(token).toString();
+    }
+
     @Trace
     private Optional<JsonNode> getNode(LineBounds bounds, String field) {
         Optional<JsonNode> node = this.getCacheItem(bounds)
@@ -172,11 +348,14 @@ public class TableViewController {
         return node;
     }
 
+    // the same node on every call: a node can only have one parent
     public VBox getView() {
-        VBox box = new VBox(table);
-        VBox.setVgrow(table, Priority.ALWAYS);  // make TableView grow inside VBox
-        box.setPadding(new Insets(5));
-        return box;
+        if (view == null) {
+            view = new VBox(table);
+            VBox.setVgrow(table, Priority.ALWAYS);  // make TableView grow inside VBox
+            view.setPadding(new Insets(5));
+        }
+        return view;
     }
 
     @Trace
@@ -184,6 +363,7 @@ public class TableViewController {
         this.jsonLineReader = jsonLineReader;
         allEntries.clear();
         columnMap.clear();
+        columnDiscovery.clear();
         table.getColumns().clear();
         table.getColumns().add(numberColumn);
         table.getColumns().add(valueColumn);
@@ -193,20 +373,8 @@ public class TableViewController {
     public void addObject(LineBounds jsonObject) {
         allEntries.add( jsonObject );
 
-        // load top-level properties
-        // TODO: delay loading of columns?
-
-        JsonNode node = this.getNode(jsonObject, null).orElse(null);
-        if (node == null)
-            return;
-
-        if (!node.isObject())
-            return;
-
-        for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
-            Map.Entry<String, JsonNode> field = it.next();
-            String key = field.getKey();
-
+        // load top-level properties; only key names are read, the row is parsed when a cell needs it
+        for (String key : columnDiscovery.add(jsonLineReader.openStream(jsonObject))) {
             if (columnMap.containsKey(key)) {
                 continue;
             }
@@ -238,6 +406,17 @@ public class TableViewController {
             @Trace
             @Override
             protected void updateItem(String item, boolean empty) {
+                SlowCellEvent event = new SlowCellEvent();
+                event.start();
+                try {
+                    update(item, empty);
+                }
+                finally {
+                    event.commit(column.getText(), getIndex(), item == null ? 0 : item.length());
+                }
+            }
+
+            private void update(String item, boolean empty) {
                 super.updateItem(item, empty);
                 if (empty || item == null) {
                     setText(null);
@@ -246,9 +425,9 @@ public class TableViewController {
                     setText(item);
 
                     LineBounds row = table.getItems().get(getIndex());
-                    Color color = highlightMap.get(row);
+                    Color color = rowColor(row, null);
 
-                    if (searchTerm != null && !searchTerm.isEmpty() && item.toLowerCase().contains(searchTerm.toLowerCase()))
+                    if (searchJob != null && searchJob.isMatch(row))
                         color = Color.YELLOW;
 
                     boolean selected = getTableRow().isSelected();
@@ -261,7 +440,7 @@ public class TableViewController {
                             toRgbString(color), textColor
                         ));
 
-                    } else if (highlightMap.isEmpty()) {
+                    } else if (!filters.engine().hasHighlights()) {
                         setStyle("");
                     } else {
                         setStyle("-fx-background-color: transparent");
@@ -279,6 +458,10 @@ public class TableViewController {
         }
     }
 
+    public void scrollToObject(long objIndex) {
+        scrollToRow(indexOfObject(objIndex));
+    }
+
     public void focus() {
         table.requestFocus();
     }
@@ -286,69 +469,72 @@ public class TableViewController {
     @Trace
     private boolean filterPredicate(LineBounds row)
     {
-        boolean hasInclude = false;
-        boolean hasExclude = false;
-        int aliveRuleCount = 0;
-
         if (this.disabledFiles.contains(row.fileId()))
             return false;
 
-        if (filterRules != null) {
-            for (FilterRule rule : filterRules) {
-                if (!rule.enabled.get()) {
-                    continue;
-                }
-                hasInclude = hasInclude || rule.action.get() == FilterViewController.ActionType.include;
-                hasExclude = hasExclude || rule.action.get() == FilterViewController.ActionType.exclude;
-                aliveRuleCount++;
-            }
-
-            boolean defaultVisibility
-                = hasInclude && hasExclude ? false
-                : !hasInclude && !hasExclude ? true
-                : hasInclude ? false
-                : true;
-            boolean hasRules = aliveRuleCount > 0;
-
-            FilterRule lastMatch = null;
+        if (rowFilter != null && !rowFilter.get(row.objIndex()))
+            return false;
 
-            // if any include/exclude rule exists then default is to hide. If none, show all
-            String json = this.getString(row, null, StringType.FULL).orElse(null);
-            if (!hasRules) {
-                return true;
-            }
+        // highlight rules are left to rowColor, for the rows that are shown
+        FilterEngine engine = this.filters.engine();
+        if (!engine.hasVisibilityRules())
+            return true;
 
-            if (json == null || json.isEmpty())
-                return true;
+        String json = this.getString(row, null, StringType.FULL).orElse(null);
+        if (json == null || json.isEmpty())
+            return true;
 
-            long objIndex = row.objIndex();
-            for (FilterRule rule : filterRules) {
-                if (!rule.enabled.get()) {
-                    continue;
-                }
-                if (rule.matches(json, objIndex)) {
-                    lastMatch = rule;
-                }
-            }
+        return engine.isVisible(json, row.objIndex());
+    }
 
-            if (lastMatch == null)
-                return defaultVisibility;
+    // the highlight color of the row, null if none; evaluated once per row and rule set
+    private Color rowColor(LineBounds row, String json) {
+        Filters current = this.filters;
+        FilterEngine engine = current.engine();
+        if (!engine.hasHighlights())
+            return null;
+
+        RowColors colors = current.colors();
+        int colorIndex = colors.get(row.objIndex());
+        if (colorIndex == RowColors.UNKNOWN) {
+            if (json == null)
+                json = this.getString(row, null, StringType.FULL).orElse("");
+            colorIndex = json.isEmpty() ? 0 : engine.colorIndex(json, row.objIndex());
+            colors.set(row.objIndex(), colorIndex);
+        }
+        return colorIndex == 0 ? null : engine.palette().get(colorIndex - 1);
+    }
 
-            if (lastMatch.action.get() == FilterViewController.ActionType.highlight) {
-                highlightMap.put(row, lastMatch.color.get());
-                return true;
+    @Trace
+    public void applyFilters(List<FilterRule> rules) {
+        FilterEngine engine = FilterEngine.of(rules);
+        boolean sameRows = engine.sameVisibility(this.filters.engine());
+        this.filters = new Filters(engine, new RowColors());
+
+        // only highlights changed: the visible rows stay, the rendered ones get their new colors
+        if (sameRows) {
+            prefetcher.invalidate();
+            table.refresh();
+            if (onFiltersApplied != null) {
+                onFiltersApplied.run();
             }
-
-            return lastMatch.action.get() == FilterViewController.ActionType.include;
+            return;
         }
+        forceFilterUpdate();
+    }
 
-        return true;
+    // a full filter pass and fresh highlight colors even when the rules did not change
+    @Trace
+    public void reapplyFilters(List<FilterRule> rules) {
+        this.filters = new Filters(FilterEngine.of(rules), new RowColors());
+        table.refresh();
+        forceFilterUpdate();
     }
 
+    // restrict the visible rows to a precomputed set of objIndexes, null shows all
     @Trace
-    public void applyFilters(List<FilterRule> rules) {
-        highlightMap.clear();
-        this.filterRules = rules;
+    public void setRowFilter(MatchBitmap rows) {
+        this.rowFilter = rows;
         forceFilterUpdate();
     }
 
@@ -380,30 +566,61 @@ public class TableViewController {
 
     @Trace
     public void selectNextMatch() {
+        selectMatch(true);
+    }
+
+    @Trace
+    public void selectPreviousMatch() {
+        selectMatch(false);
+    }
 
-        if (searchTerm == null || searchTerm.isEmpty())
+    private void selectMatch(boolean forward) {
+        SearchJob job = searchJob;
+        if (job == null)
             return;
 
-        int startIndex = table.getSelectionModel().getSelectedIndex();
-        int rowCount = table.getItems().size();
+        int selectedIndex = table.getSelectionModel().getSelectedIndex();
+        long from = selectedIndex >= 0 ? table.getItems().get(selectedIndex).objIndex() : -1;
 
-        for (int i = 1; i <= rowCount; i++) {
-            int currentIndex = (startIndex + i) % rowCount;
-            LineBounds row = table.getItems().get(currentIndex);
-            if (row == null)
-                continue;
+        long found;
+        if (forward) {
+            found = job.nextMatch(from + 1);
+            if (found < 0)
+                found = job.nextMatch(0); // loop around
+        } else {
+            found = from >= 0 ? job.previousMatch(from - 1) : -1;
+            if (found < 0)
+                found = job.previousMatch(Long.MAX_VALUE); // loop around
+        }
 
-            String rowData = this.getString(row, null, StringType.FULL).orElse(null);
-            if (rowData == null)
-                continue;
+        int index = indexOfObject(found);
+        if (index < 0)
+            return;
+
+        table.getSelectionModel().clearAndSelect(index);
+        table.scrollTo(index);
+    }
 
-            if (rowData.toLowerCase().contains(searchTerm.toLowerCase())) {
-                table.getSelectionModel().clearAndSelect(currentIndex);
-                table.scrollTo(currentIndex);
-                // table.requestFocus();
-                break;
+    // position of the row with the given objIndex in the (objIndex-sorted) visible list
+    private int indexOfObject(long objIndex) {
+        if (objIndex < 0)
+            return -1;
+
+        List<LineBounds> items = table.getItems();
+        int low = 0;
+        int high = items.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = items.get(mid).objIndex();
+            if (value < objIndex) {
+                low = mid + 1;
+            } else if (value > objIndex) {
+                high = mid - 1;
+            } else {
+                return mid;
             }
         }
+        return -1;
     }
 
     @Trace
@@ -0,0 +1,216 @@
+package app;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+// Timestamps and highlight colors of a row snapshot, extracted once into
+// primitive arrays. Bucketing for any zoom level works on these arrays (or on
+// a fixed fine-grained level built from them) without re-reading the rows.
+public class TimeHistogram {
+    public static final long MISSING = Long.MIN_VALUE;
+    private static final int FINE_BUCKETS = 1 << 16;
+    private static final JsonFactory factory = new JsonFactory();
+    private static final DateTimeFormatter labelFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    public static record Buckets(long from, long to, int count, int colors, int[] counts, int[] firstRow) {
+        public int total(int bucket) {
+            int total = 0;
+            for (int color = 0; color < colors; color++) {
+                total += counts[bucket * colors + color];
+            }
+            return total;
+        }
+
+        public int max() {
+            int max = 0;
+            for (int bucket = 0; bucket < count; bucket++) {
+                max = Math.max(max, total(bucket));
+            }
+            return max;
+        }
+
+        public long bucketStart(int bucket) {
+            return from + (long) ((double) (to - from + 1) * bucket / count);
+        }
+    }
+
+    private final long[] times;       // per row, MISSING when the field is absent
+    private final long[] objIndexes;  // per row
+    private final byte[] colors;      // per row, FilterEngine color index
+    private final int colorCount;     // palette size + 1 for "not highlighted"
+
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private int[] fineCounts;
+    private int[] fineFirst;
+
+    public TimeHistogram(int rows, int paletteSize) {
+        this.times = new long[rows];
+        this.objIndexes = new long[rows];
+        this.colors = new byte[rows];
+        this.colorCount = paletteSize + 1;
+        Arrays.fill(times, MISSING);
+    }
+
+    public void set(int row, long objIndex, long time, int colorIndex) {
+        objIndexes[row] = objIndex;
+        times[row] = time;
+        colors[row] = (byte) colorIndex;
+    }
+
+    // call once all rows are set
+    public void finish() {
+        for (long time : times) {
+            if (time != MISSING) {
+                min = Math.min(min, time);
+                max = Math.max(max, time);
+            }
+        }
+        if (isEmpty()) {
+            return;
+        }
+
+        Buckets fine = scan(min, max, FINE_BUCKETS);
+        fineCounts = fine.counts();
+        fineFirst = fine.firstRow();
+    }
+
+    public boolean isEmpty() {
+        return min > max;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public int getColorCount() {
+        return colorCount;
+    }
+
+    public long getObjIndex(int row) {
+        return objIndexes[row];
+    }
+
+    // count rows per bucket and color over [from..to]
+    public Buckets bucket(long from, long to, int count) {
+        double width = (to - from + 1.0) / count;
+        double fineWidth = (max - min + 1.0) / FINE_BUCKETS;
+        if (fineCounts == null || fineWidth * 4 > width) {
+            return scan(from, to, count);
+        }
+
+        // coarse enough to re-bucket the fine level, bucket edges are off by at most a fine bucket
+        int[] counts = new int[count * colorCount];
+        int[] first = new int[count];
+        Arrays.fill(first, -1);
+        for (int fine = 0; fine < FINE_BUCKETS; fine++) {
+            long start = min + (long) (fine * fineWidth);
+            if (start < from || start > to) {
+                continue;
+            }
+            int bucket = Math.min(count - 1, (int) ((start - from) / width));
+            for (int color = 0; color < colorCount; color++) {
+                counts[bucket * colorCount + color] += fineCounts[fine * colorCount + color];
+            }
+            int row = fineFirst[fine];
+            if (row >= 0 && (first[bucket] < 0 || row < first[bucket])) {
+                first[bucket] = row;
+            }
+        }
+        return new Buckets(from, to, count, colorCount, counts, first);
+    }
+
+    private Buckets scan(long from, long to, int count) {
+        double width = (to - from + 1.0) / count;
+        int[] counts = new int[count * colorCount];
+        int[] first = new int[count];
+        Arrays.fill(first, -1);
+
+        for (int row = 0; row < times.length; row++) {
+            long time = times[row];
+            if (time == MISSING || time < from || time > to) {
+                continue;
+            }
+            int bucket = Math.min(count - 1, (int) ((time - from) / width));
+            counts[bucket * colorCount + colors[row]]++;
+            if (first[bucket] < 0) {
+                first[bucket] = row;
+            }
+        }
+        return new Buckets(from, to, count, colorCount, counts, first);
+    }
+
+    // value of a top-level field as a timestamp: numbers as they are, date strings as epoch millis
+    public static long extractTime(String json, String field) {
+        try (JsonParser parser = factory.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return MISSING;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (field.equals(name)) {
+                    return switch (token) {
+                        case VALUE_NUMBER_INT -> parser.getLongValue();
+                        case VALUE_NUMBER_FLOAT -> Math.round(parser.getDoubleValue());
+                        case VALUE_STRING -> parseTime(parser.getText());
+                        default -> MISSING;
+                    };
+                }
+                parser.skipChildren();
+            }
+        }
+        catch (Exception e) {
+            // malformed rows have no timestamp
+        }
+        return MISSING;
+    }
+
+    private static long parseTime(String text) {
+        try {
+            return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ignored) {}
+        try {
+            return Instant.parse(text).toEpochMilli();
+        } catch (DateTimeParseException ignored) {}
+        try {
+            return LocalDateTime.parse(text.replace(' ', 'T')).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException ignored) {}
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException ignored) {}
+        return MISSING;
+    }
+
+    // timestamps that look like epoch seconds/millis/micros/nanos are shown as dates
+    public static String formatTime(long value) {
+        long millis;
+        long magnitude = Math.abs(value);
+        if (magnitude >= 1_000_000_000L && magnitude < 10_000_000_000L) {
+            millis = value * 1000;
+        } else if (magnitude >= 1_000_000_000_000L && magnitude < 10_000_000_000_000L) {
+            millis = value;
+        } else if (magnitude >= 1_000_000_000_000_000L && magnitude < 10_000_000_000_000_000L) {
+            millis = value / 1000;
+        } else if (magnitude >= 1_000_000_000_000_000_000L) {
+            millis = value / 1_000_000;
+        } else {
+            return String.format("%,d", value);
+        }
+        return labelFormat.format(Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()));
+    }
+}
@@ -1,15 +1,21 @@
 package app;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.scene.Node;
 import javafx.scene.control.TextArea;
@@ -35,20 +41,299 @@ import javafx.util.Duration;
 
 public class TreeViewController {
 
-    public static final record TreeElem (
-        String nodeName,
-        JsonNode node,
-        String title,
-        Integer elements,
-        Integer byteSize
-    ) {}
+    public static final class TreeElem {
+        private static final int MAX_TITLE_LENGTH = 200;
+        private static final int PAGE_SIZE = 1000;
+        private static final int TAPE_DECODE_LIMIT = 64 * 1024;
+
+        private enum Kind {
+            VALUE,  // a JSON value, titled "key: ..." or "[i]: ..."
+            TEXT,   // full text of a truncated primitive
+            RANGE,  // page [from..to) of a large array
+        }
+
+        private final Kind kind;
+        private final String nodeName;
+        private final String label;
+        private final JsonNode node;
+        private final int from;
+        private final int to;
+        private final Map<JsonNode, Integer> sizes;
+
+        // huge records are browsed on their tape; node is null then, and token is
+        // the value (or, for a RANGE, the first element of the page)
+        private final JsonTape tape;
+        private final int token;
+
+        // computed on first use
+        private String title;
+        private boolean truncated;
+        private Integer elements;
+        private Integer byteSize;
+
+        private TreeElem(Kind kind, String nodeName, String label, JsonNode node, int from, int to, Map<JsonNode, Integer> sizes) {
+            this(kind, nodeName, label, node, from, to, sizes, null, -1);
+        }
+
+        private TreeElem(Kind kind, String nodeName, String label, JsonNode node, int from, int to, Map<JsonNode, Integer> sizes, JsonTape tape, int token) {
+            this.kind = kind;
+            this.nodeName = nodeName;
+            this.label = label;
+            this.node = node;
+            this.from = from;
+            this.to = to;
+            this.sizes = sizes;
+            this.tape = tape;
+            this.token = token;
+        }
+
+        // top-level elements of a record
+        public static List<TreeElem> forRecord(JsonNode node) {
+            return new TreeElem(Kind.VALUE, null, "", node, 0, 0, new IdentityHashMap<>()).children();
+        }
+
+        public static List<TreeElem> forTape(JsonTape tape) {
+            return new TreeElem(Kind.VALUE, null, "", null, 0, 0, new IdentityHashMap<>(), tape, tape.root()).children();
+        }
+
+        // small subtrees of a tape are decoded and handled like any other node
+        private TreeElem tapeValue(String nodeName, String label, int valueToken) {
+            if (tape.end(valueToken) - tape.start(valueToken) <= TAPE_DECODE_LIMIT) {
+                return new TreeElem(Kind.VALUE, nodeName, label, tape.decode(valueToken), 0, 0, sizes);
+            }
+            return new TreeElem(Kind.VALUE, nodeName, label, null, 0, 0, sizes, tape, valueToken);
+        }
+
+        public String nodeName() {
+            return nodeName;
+        }
+
+        public JsonNode node() {
+            if (node == null && tape != null && kind == Kind.VALUE) {
+                return tape.decode(token);
+            }
+            return node;
+        }
+
+        public String title() {
+            if (title == null) {
+                computeTitle();
+            }
+            return title;
+        }
+
+        public Integer elements() {
+            if (elements == null) {
+                elements = switch (kind) {
+                    case VALUE -> tape != null
+                        ? (tape.isContainer(token) ? tape.size(token) : null)
+                        : (node.isContainerNode() ? node.size() : null);
+                    case TEXT -> null;
+                    case RANGE -> to - from;
+                };
+            }
+            return elements;
+        }
+
+        public Integer byteSize() {
+            if (byteSize == null) {
+                byteSize = switch (kind) {
+                    case VALUE, TEXT -> tape != null
+                        ? tape.end(token) - tape.start(token)
+                        : (node.isContainerNode() ? JsonText.length(node, sizes) : node.asText().length());
+                    case RANGE -> {
+                        if (tape != null) {
+                            int last = token;
+                            for (int i = from + 1; i < to; i++) {
+                                last = tape.next(last);
+                            }
+                            yield tape.end(last) - tape.start(token);
+                        }
+                        int size = to - from - 1; // commas
+                        for (int i = from; i < to; i++) {
+                            size += JsonText.length(node.get(i), sizes);
+                        }
+                        yield size;
+                    }
+                };
+            }
+            return byteSize;
+        }
+
+        private void computeTitle() {
+            switch (kind) {
+                case TEXT -> title = node.asText();
+                case RANGE -> title = "[" + from + ".." + (to - 1) + "]";
+                case VALUE -> {
+                    String text;
+                    if (tape != null) {
+                        // raw source text, the subtree is too large to decode for a title
+                        text = tape.text(token, MAX_TITLE_LENGTH * 4).replaceAll("\\s+", " ");
+                        truncated = true;
+                        if (text.length() > MAX_TITLE_LENGTH) {
+                            text = text.substring(0, MAX_TITLE_LENGTH);
+                        }
+                        text += "...";
+                    } else if (node.isContainerNode()) {
+                        text = JsonText.head(node, MAX_TITLE_LENGTH);
+                        truncated = text.length() > MAX_TITLE_LENGTH;
+                        if (truncated) {
+                            text = text.substring(0, MAX_TITLE_LENGTH) + "...";
+                        }
+                    } else {
+                        text = node.asText();
+                        int newLine = text.indexOf('\n');
+                        if (newLine >= 0 && text.length() > newLine + 1) {
+                            int maxLength = Math.min(256, text.length());
+                            text = text.substring(0, maxLength).replaceAll("\n", "\\\\n") + (text.length() > maxLength ? "..." : "");
+                            truncated = true;
+                        } else if (text.length() > MAX_TITLE_LENGTH) {
+                            text = text.substring(0, MAX_TITLE_LENGTH) + "...";
+                            truncated = true;
+                        }
+                    }
+                    title = label + text;
+                }
+            }
+        }
+
+        boolean hasChildren() {
+            return switch (kind) {
+                case VALUE -> tape != null
+                    ? tape.isContainer(token) && tape.next(token) > token + 2
+                    : (node.isContainerNode() ? node.size() > 0 : truncated());
+                case TEXT -> false;
+                case RANGE -> true;
+            };
+        }
+
+        private boolean truncated() {
+            title();
+            return truncated;
+        }
+
+        List<TreeElem> children() {
+            List<TreeElem> children = new ArrayList<>();
+            if (tape != null) {
+                tapeChildren(children);
+                return children;
+            }
+
+            switch (kind) {
+                case VALUE -> {
+                    if (node.isObject()) {
+                        node.fields().forEachRemaining(entry -> children.add(
+                            new TreeElem(Kind.VALUE, entry.getKey(), entry.getKey() + ": ", entry.getValue(), 0, 0, sizes)));
+                    } else if (node.isArray()) {
+                        addRange(children, 0, node.size());
+                    } else if (truncated()) {
+                        children.add(new TreeElem(Kind.TEXT, nodeName, "", node, 0, 0, sizes));
+                    }
+                }
+                case RANGE -> addRange(children, from, to);
+                case TEXT -> {}
+            }
+            return children;
+        }
+
+        // elements of [start..end), grouped into pages when there are too many
+        private void addRange(List<TreeElem> children, int start, int end) {
+            if (end - start <= PAGE_SIZE) {
+                for (int i = start; i < end; i++) {
+                    children.add(new TreeElem(Kind.VALUE, null, "[" + i + "]: ", node.get(i), 0, 0, sizes));
+                }
+                return;
+            }
+
+            long step = pageStep(start, end);
+            for (long page = start; page < end; page += step) {
+                children.add(new TreeElem(Kind.RANGE, null, "", node, (int) page, (int) Math.min(end, page + step), sizes));
+            }
+        }
+
+        private static long pageStep(int start, int end) {
+            long step = PAGE_SIZE;
+            while ((end - start + step - 1) / step > PAGE_SIZE) {
+                step *= PAGE_SIZE;
+            }
+            return step;
+        }
+
+        private void tapeChildren(List<TreeElem> children) {
+            if (kind == Kind.RANGE) {
+                addTapeRange(children, from, to, token);
+            } else if (tape.type(token) == JsonTape.Type.OBJECT) {
+                for (int key = token + 2, last = tape.next(token); key < last; key = tape.next(key + 1)) {
+                    String name = tape.stringValue(key);
+                    children.add(tapeValue(name, name + ": ", key + 1));
+                }
+            } else if (tape.type(token) == JsonTape.Type.ARRAY) {
+                addTapeRange(children, 0, elements(), token + 2);
+            }
+        }
+
+        // like addRange, walking the tape from the first element's token
+        private void addTapeRange(List<TreeElem> children, int start, int end, int firstToken) {
+            int element = firstToken;
+            if (end - start <= PAGE_SIZE) {
+                for (int i = start; i < end; i++) {
+                    children.add(tapeValue(null, "[" + i + "]: ", element));
+                    element = tape.next(element);
+                }
+                return;
+            }
+
+            long step = pageStep(start, end);
+            for (long page = start; page < end; page += step) {
+                int pageEnd = (int) Math.min(end, page + step);
+                children.add(new TreeElem(Kind.RANGE, null, "", null, (int) page, pageEnd, sizes, tape, element));
+                for (long i = page; i < pageEnd; i++) {
+                    element = tape.next(element);
+                }
+            }
+        }
+    }
+
+    // creates children on first access, so only expanded parts of a record are materialized
+    private static class JsonTreeItem extends TreeItem<TreeElem> {
+        private boolean childrenLoaded = false;
+
+        JsonTreeItem(TreeElem elem) {
+            super(elem);
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return !getValue().hasChildren();
+        }
+
+        @Override
+        public ObservableList<TreeItem<TreeElem>> getChildren() {
+            if (!childrenLoaded) {
+                childrenLoaded = true;
+                super.getChildren().setAll(createItems(getValue().children()));
+            }
+            return super.getChildren();
+        }
+
+        static List<TreeItem<TreeElem>> createItems(List<TreeElem> elems) {
+            List<TreeItem<TreeElem>> items = new ArrayList<>(elems.size());
+            for (TreeElem elem : elems) {
+                items.add(new JsonTreeItem(elem));
+            }
+            return items;
+        }
+    }
 
     private TreeView<TreeElem> tree = new TreeView<>(new TreeItem<TreeElem>(null));
     private StringProperty currentSearch = new SimpleStringProperty();
     private BooleanProperty showElements = new SimpleBooleanProperty(false);
     private BooleanProperty showByteSize = new SimpleBooleanProperty(false);
-    private List<TreeItem<TreeElem>> matches = new ArrayList<>();
+    private List<int[]> matches = new ArrayList<>();  // child ordinal paths, see JsonSearchIndex
     private int matchIndex = 0;
+    private JsonNode record = null;
+    private JsonSearchIndex searchIndex = null;
+    private AtomicBoolean searchCancelled = new AtomicBoolean();
 
     public TreeViewController() {
         tree.setShowRoot(false);
@@ -110,7 +395,7 @@ public class TreeViewController {
                     .filter(it -> it.getLength() > 0)
                     .map(it -> textField.getSelectedText())
                     .orElseGet(() -> {
-                        return item.node.toPrettyString();
+                        return item.node().toPrettyString();
                     });
 
                     if (text == null || text.isEmpty()) {
@@ -168,25 +453,27 @@ public class TreeViewController {
                     TextInputControl textControl;
                     Node disclosureNode = getDisclosureNode();
 
-                    String title = item.title;
+                    String title = item.title();
+                    Integer elements = showElements.get() ? item.elements() : null;
+                    Integer byteSize = showByteSize.get() ? item.byteSize() : null;
                     String tooltip;
                     String prefix = null;
 
-                    boolean hasElements = item.elements != null && item.elements != null && showElements.get();
-                    boolean hasByteSize = item.byteSize != null && item.byteSize >= 0 && showByteSize.get();
+                    boolean hasElements = elements != null;
+                    boolean hasByteSize = byteSize != null && byteSize >= 0;
 
                     if (hasElements && hasByteSize) {
-                        // title = String.format("(%d elements, %d bytes) %s", item.elements, item.byteSize, title);
-                        tooltip = String.format("(%d elements, %d bytes)", item.elements, item.byteSize);
-                        prefix = String.format("[%2s:%8s]", item.elements, humanReadableSize(item.byteSize));
+                        // title = String.format("(%d elements, %d bytes) %s", elements, byteSize, title);
+                        tooltip = String.format("(%d elements, %d bytes)", elements, byteSize);
+                        prefix = String.format("[%2s:%8s]", elements, humanReadableSize(byteSize));
                     } else if (hasElements) {
-                        // title = String.format("(%d elements) %s", item.elements, item.byteSize, title);
-                        tooltip = String.format("(%d elements)", item.elements, item.byteSize);
-                        prefix = String.format("[%2s]", item.elements);
+                        // title = String.format("(%d elements) %s", elements, byteSize, title);
+                        tooltip = String.format("(%d elements)", elements, byteSize);
+                        prefix = String.format("[%2s]", elements);
                     } else if (hasByteSize) {
-                        // title = String.format("(%d bytes) %s", item.byteSize, title);
-                        tooltip = String.format("(%d bytes)", item.byteSize);
-                        prefix = String.format("[%8s]", humanReadableSize(item.byteSize));
+                        // title = String.format("(%d bytes) %s", byteSize, title);
+                        tooltip = String.format("(%d bytes)", byteSize);
+                        prefix = String.format("[%8s]", humanReadableSize(byteSize));
                     } else {
                         tooltip = null;
                         prefix = null;
@@ -224,7 +511,7 @@ public class TreeViewController {
                     prefixText.setText(prefix);
                     String query = currentSearch.get();
                     if (query != null && !query.isEmpty()) {
-                        int index = item.node.toString().toLowerCase().indexOf(query.toLowerCase());
+                        int index = SearchJob.indexOfIgnoreCase(title, query.toLowerCase(), 0);
                         if (index >= 0) {
                             textControl.selectRange(index, index + query.length());
                         } else {
@@ -270,13 +557,18 @@ public class TreeViewController {
     public void setObject(JsonNode jsonObject) {
         try {
             tree.getRoot().getChildren().clear();
+            cancelSearch();
+            record = jsonObject;
+            searchIndex = null;
+            matches = new ArrayList<>();
+            matchIndex = 0;
 
             if (jsonObject == null) {
                 System.err.println("Invalid JSON: " + jsonObject);
                 return;
             }
 
-            this.addJsonToTree(jsonObject, tree.getRoot());
+            tree.getRoot().getChildren().setAll(JsonTreeItem.createItems(TreeElem.forRecord(jsonObject)));
         }
         catch (Exception e) {
             System.err.println("Invalid JSON: " + e.getMessage());
@@ -285,165 +577,124 @@ public class TreeViewController {
         }
     }
 
-    private static record Title(
-        String title,
-        boolean truncated,
-        Integer elements,
-        Integer byteSize
-    ) {}
-
-    private Title getTitle(JsonNode node) {
-        String title;
-        boolean truncated = false;
-        Integer elements = null;
-        Integer byteSize = null;
-
-        if (node.isObject() || node.isArray()) {
-            String s = node.toString();
-            var newLine = s.indexOf("\n");
-            if (newLine >= 0 && s.length() > newLine + 1) {
-                title = s.substring(0, newLine) + "...";
-                truncated = true;
-            } else if (s.length() > 200) {
-                title = s.substring(0, 200) + "...";
-                truncated = true;
-            } else {
-                title = s;
-            }
-
-            elements = node.size();
-            byteSize = s.length();
-        } else {
-            var text = node.asText();
-            var newLine = text.indexOf('\n');
-
-            if (newLine >= 0 && text.length() > newLine + 1) {
-                var maxLength = Math.min(256, text.length());
-                title = text.substring(0, maxLength).replaceAll("\n", "\\\\n") + (text.length() > maxLength ? "..." : "");
-                truncated = true;
-            } else if (text.length() > 200) {
-                title = text.substring(0, 200) + "...";
-                truncated = true;
-            } else {
-                title = text;
-            }
-
-            byteSize = text.length();
-        }
-
-        return new Title(title, truncated, elements, byteSize);
-    }
-
-    private void addJsonToTree(JsonNode node, TreeItem<TreeElem> parent) {
-        if (node.isObject()) {
-            node.fields().forEachRemaining(entry -> {
-                TreeItem<TreeElem> child;
-                Title result = this.getTitle(entry.getValue());
-                String title = result.title();
-                Boolean truncated = result.truncated();
-                Integer elements = result.elements();
-                Integer byteSize = result.byteSize();
-
-                TreeElem elem = new TreeElem(
-                    entry.getKey(),
-                    entry.getValue(),
-                    entry.getKey() + ": " + title,
-                    elements,
-                    byteSize
-                    );
-
-                if (entry.getValue().isObject()) {
-                    child = new TreeItem<>(elem);
-                    addJsonToTree(entry.getValue(), child);
-                } else if (entry.getValue().isArray()) {
-                    child = new TreeItem<>(elem);
-                    addJsonToTree(entry.getValue(), child);
-                } else {
-                    if (truncated) { // truncated
-                        child = new TreeItem<>(elem);
-                        var childElem = new TreeElem(entry.getKey(), entry.getValue(), entry.getValue().asText(), elements, byteSize);
-
-                        var rest = new TreeItem<>(childElem);
-                        child.getChildren().add(rest);
-                    }
-                    else {
-                        child = new TreeItem<>(elem);
-                    }
-                }
-                parent.getChildren().add(child);
-            });
-        } else if (node.isArray()) {
-            int index = 0;
-            for (var element : node) {
-                TreeItem<TreeElem> child;
-                var result = this.getTitle(element);
-                String title = result.title();
-                Boolean truncated = result.truncated();
-                Integer elements = result.elements();
-                Integer byteSize = result.byteSize();
-                var elem = new TreeElem(null, element, "[" + index + "]: " + title, elements, byteSize);
-
-                if (element.isObject() || element.isArray()) {
-                    child = new TreeItem<>(elem);
-                    addJsonToTree(element, child);
-                } else {
-                    if (truncated) {
-                        child = new TreeItem<>(elem);
-                        var childElem = new TreeElem(null, element, element.asText(), elements, byteSize);
+    // browse a record too large for a Jackson tree, see JsonTape
+    public void setTape(JsonTape tape) {
+        tree.getRoot().getChildren().clear();
+        cancelSearch();
+        record = null;
+        searchIndex = null;
+        matches = new ArrayList<>();
+        matchIndex = 0;
 
-                        var rest = new TreeItem<>(childElem);
-                        child.getChildren().add(rest);
-                    }
-                    else {
-                        child = new TreeItem<>(elem);
-                    }
-                }
-                parent.getChildren().add(child);
-                index++;
-            }
-        }
+        tree.getRoot().getChildren().setAll(JsonTreeItem.createItems(TreeElem.forTape(tape)));
     }
 
     public void onSearch(String searchString)
     {
         String query = searchString.toLowerCase();
-        TreeItem<TreeElem> root = tree.getRoot();
 
         if (query == null || query.isEmpty()) {
             // collapseAll(root, true);
+            cancelSearch();
             currentSearch.set("");
             matches.clear();
             matchIndex = 0;
             return;
         }
 
-        if (query.equals(currentSearch.get())) {
-            // next match
-            matchIndex = (matchIndex + 1) % matches.size(); // loop around
-            TreeItem<TreeElem> next = matches.get(matchIndex);
-
-            expandPathTo(next);
-            tree.getSelectionModel().select(next);
-            tree.scrollTo(tree.getRow(next));
+        if (query.equals(currentSearch.get()) && !matches.isEmpty()) {
+            searchNext();
+            return;
+        }
 
+        if (record == null) {
             return;
         }
 
-        // collapseAll(root, true);
-        matches = new ArrayList<>();
-        findMatches(root, query.toLowerCase(), matches);
+        // index the record once and search it off the FX thread
+        cancelSearch();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        searchCancelled = cancelled;
 
-        for (TreeItem<TreeElem> match : matches) {
-            expandPathTo(match);
-        }
+        JsonNode searchRecord = record;
+        JsonSearchIndex knownIndex = searchIndex;
+        Background.submit(() -> {
+            try {
+                JsonSearchIndex index = knownIndex != null ? knownIndex : JsonSearchIndex.build(searchRecord, cancelled::get);
+                List<int[]> found = index.find(query, cancelled::get);
+
+                Platform.runLater(() -> {
+                    if (cancelled.get() || searchRecord != record) {
+                        return;
+                    }
+                    searchIndex = index;
+                    onSearchDone(query, found);
+                });
+            }
+            catch (CancellationException ignored) {
+            }
+        });
+    }
+
+    private void onSearchDone(String query, List<int[]> found) {
+        matches = found;
+        matchIndex = 0;
+        currentSearch.set(query);
 
         if (!matches.isEmpty()) {
-            tree.getSelectionModel().select(matches.get(0));
-            tree.scrollTo(tree.getRow(matches.get(0)));
+            selectMatch(matches.get(0));
+        } else {
+            tree.refresh();
         }
+    }
 
-        currentSearch.set(query);
-        matchIndex = 0;
+    private void cancelSearch() {
+        searchCancelled.set(true);
+    }
+
+    // materializes the items along a match path and selects the last one
+    private void selectMatch(int[] path) {
+        TreeItem<TreeElem> item = tree.getRoot();
+        for (int ordinal : path) {
+            List<TreeItem<TreeElem>> children = item.getChildren();
+            if (children.isEmpty()) {
+                break;
+            }
+
+            // descend through array page groups; pages nest and their bounds are absolute
+            // ordinals, so the ordinal is only made relative to the innermost page
+            TreeItem<TreeElem> first = children.get(0);
+            int pageFrom = 0;
+            while (first.getValue().kind == TreeElem.Kind.RANGE) {
+                TreeItem<TreeElem> page = null;
+                for (TreeItem<TreeElem> child : children) {
+                    if (ordinal >= child.getValue().from && ordinal < child.getValue().to) {
+                        page = child;
+                        break;
+                    }
+                }
+                if (page == null) {
+                    return;
+                }
+                pageFrom = page.getValue().from;
+                children = page.getChildren();
+                first = children.get(0);
+            }
+
+            int index = ordinal - pageFrom;
+            if (index >= children.size()) {
+                return;
+            }
+            item = children.get(index);
+        }
+
+        if (item == tree.getRoot()) {
+            return;
+        }
+
+        expandPathTo(item);
+        tree.getSelectionModel().select(item);
+        tree.scrollTo(tree.getRow(item));
     }
 
     private void collapseAll(TreeItem<?> item, boolean isRoot) {
@@ -463,21 +714,6 @@ public class TreeViewController {
         }
     }
 
-    private void findMatches(TreeItem<TreeElem> item, String query, List<TreeItem<TreeElem>> matches) {
-        TreeElem value = item.getValue();
-        if (value != null) {
-            String s = value.node.toString();
-
-            if (s.toLowerCase().contains(query)) {
-                matches.add(item);
-            }
-        }
-
-        for (TreeItem<TreeElem> child : item.getChildren()) {
-            findMatches(child, query, matches);
-        }
-    }
-
     private TextFlow highlightMatch(String text, String query) {
         TextFlow flow = new TextFlow();
 
@@ -512,11 +748,7 @@ public class TreeViewController {
 
         // next match
         matchIndex = (matchIndex + 1) % matches.size(); // loop around
-        TreeItem<TreeElem> next = matches.get(matchIndex);
-
-        expandPathTo(next);
-        tree.getSelectionModel().select(next);
-        tree.scrollTo(tree.getRow(next));
+        selectMatch(matches.get(matchIndex));
     }
 
     public void searchPrevious() {
@@ -526,11 +758,7 @@ public class TreeViewController {
 
         // previous match
         matchIndex = (matchIndex - 1 + matches.size()) % matches.size(); // loop around
-        TreeItem<TreeElem> next = matches.get(matchIndex);
-
-        expandPathTo(next);
-        tree.getSelectionModel().select(next);
-        tree.scrollTo(tree.getRow(next));
+        selectMatch(matches.get(matchIndex));
     }
 
     public static String humanReadableSize(long bytes) {
@@ -0,0 +1,35 @@
+package app.debug;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// A row parsed because it was not in the table's cache
+@Name("app.CacheMiss")
+@Label("Row Cache Miss")
+@Category({ "JSONL Viewer", "Table" })
+@Description("A row read and parsed because the table had not cached it")
+public class CacheMissEvent extends TimedEvent {
+    @Label("Row")
+    public long row;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Tape")
+    @Description("Huge record indexed as a tape instead of parsed into a tree")
+    public boolean tape;
+
+    public void commit(long row, long bytes, boolean tape) {
+        end();
+        if (shouldCommit()) {
+            this.row = row;
+            this.bytes = bytes;
+            this.tape = tape;
+            commit();
+        }
+    }
+}
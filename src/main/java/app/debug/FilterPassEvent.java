@@ -0,0 +1,41 @@
+package app.debug;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// The filter predicate run over every loaded row
+@Name("app.FilterPass")
+@Label("Filter Pass")
+@Category({ "JSONL Viewer", "Filter" })
+@Description("The filter rules evaluated over all loaded rows")
+@StackTrace(false)
+public class FilterPassEvent extends TimedEvent {
+    @Label("Rules")
+    public int rules;
+
+    @Label("Rows")
+    public long rows;
+
+    @Label("Matched")
+    @Description("Rows left visible")
+    public long matched;
+
+    @Label("Rows per Second")
+    @Frequency
+    public long rowsPerSecond;
+
+    public void commit(int rules, long rows, long matched) {
+        end();
+        if (shouldCommit()) {
+            this.rules = rules;
+            this.rows = rows;
+            this.matched = matched;
+            this.rowsPerSecond = perSecond(rows);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package app.debug;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One mapped chunk of a file scanned into rows, see JsonLineReader.addFile
+@Name("app.IngestChunk")
+@Label("Ingest Chunk")
+@Category({ "JSONL Viewer", "Ingest" })
+@Description("A mapped chunk of a file scanned into rows")
+@StackTrace(false)
+public class IngestChunkEvent extends TimedEvent {
+    @Label("File")
+    public String file;
+
+    @Label("Chunk")
+    public int chunk;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Records")
+    public long records;
+
+    @Label("Bytes per Second")
+    @DataAmount
+    @Frequency
+    public long bytesPerSecond;
+
+    @Label("Records per Second")
+    @Frequency
+    public long recordsPerSecond;
+
+    public void commit(String file, int chunk, long bytes, long records) {
+        end();
+        if (shouldCommit()) {
+            this.file = file;
+            this.chunk = chunk;
+            this.bytes = bytes;
+            this.records = records;
+            this.bytesPerSecond = perSecond(bytes);
+            this.recordsPerSecond = perSecond(records);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package app.debug;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Named counters for the performance HUD. Classes look their counters up
+// once into static fields; updating one is a LongAdder add, striped across
+// threads, so the counters stay on in normal runs.
+public final class Metrics {
+    // ingest: rows and bytes scanned, time spent scanning
+    public static final String INGEST_ROWS = "ingest.rows";
+    public static final String INGEST_BYTES = "ingest.bytes";
+    public static final String INGEST_NANOS = "ingest.nanos";
+    // full filter passes, the rows they went through and their time
+    public static final String FILTER_PASSES = "filter.passes";
+    public static final String FILTER_ROWS = "filter.rows";
+    public static final String FILTER_NANOS = "filter.nanos";
+    // the table's parsed row cache: lookups, misses and bytes of the rows it holds
+    public static final String CACHE_LOOKUPS = "cache.lookups";
+    public static final String CACHE_MISSES = "cache.misses";
+    public static final String CACHE_BYTES = "cache.bytes";
+    // JavaFX pulses and time from their start to the end of layout
+    public static final String FX_PULSES = "fx.pulses";
+    public static final String FX_PULSE_NANOS = "fx.pulseNanos";
+
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    public static long get(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    // current values, sorted by name; not atomic across counters
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+        return values;
+    }
+}
@@ -0,0 +1,34 @@
+package app.debug;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+// A table cell update slower than the threshold, 5 ms unless the recording sets another
+@Name("app.SlowCell")
+@Label("Slow Cell Update")
+@Category({ "JSONL Viewer", "Table" })
+@Description("A table cell's updateItem that took longer than the threshold")
+@Threshold("5 ms")
+public class SlowCellEvent extends TimedEvent {
+    @Label("Column")
+    public String column;
+
+    @Label("Row")
+    public long row;
+
+    @Label("Text Length")
+    public int length;
+
+    public void commit(String column, long row, int length) {
+        end();
+        if (shouldCommit()) {
+            this.column = column;
+            this.row = row;
+            this.length = length;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package app.debug;
+
+import jdk.jfr.Event;
+
+// Base of the app's JFR events. start() and end() bracket the work; the
+// fields are filled in only when the event is going to be committed, so with
+// no recording running an event costs little more than its allocation, which
+// the JIT usually removes.
+public abstract class TimedEvent extends Event {
+    // not recorded: the clock at start(), read only when the event is enabled
+    private transient long startNanos;
+
+    public void start() {
+        if (isEnabled()) {
+            startNanos = System.nanoTime();
+        }
+        begin();
+    }
+
+    // count per second over the time since start()
+    protected long perSecond(long count) {
+        long nanos = System.nanoTime() - startNanos;
+        return nanos <= 0 ? 0 : (long) (count * 1e9 / nanos);
+    }
+}
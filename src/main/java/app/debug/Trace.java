@@ -5,5 +5,8 @@ import java.lang.annotation.*;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface Trace {
-    String value() default "";
+    String value() default ""; // label, Class.method by default
+
+    // record all arguments; otherwise only those annotated with @TraceArg
+    boolean args() default false;
 }
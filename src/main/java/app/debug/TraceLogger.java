@@ -1,23 +1,133 @@
 package app.debug;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.SerializationFeature;
-
-import java.io.File;
 import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Supplier;
 
+// Events are recorded into a fixed-size ring buffer owned by the calling
+// thread: no lock and no allocation on the recording path. A daemon thread
+// drains the rings every few milliseconds into the sink, usually a TraceWriter
+// streaming them to a file. When a ring is full the event is dropped and
+// counted rather than blocking the traced code.
 public class TraceLogger {
-    private static final List<TraceEvent> events = Collections.synchronizedList(new ArrayList<>());
+    private static final int RING_CAPACITY = 1 << 14;
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
     private static final long startTime = System.nanoTime();
     private static final int pid = getProcessId();
-    private static boolean enabled = false;
+    private static volatile boolean enabled = false;
+
+    private static final List<Ring> rings = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Ring> localRing = ThreadLocal.withInitial(() -> {
+        Ring ring = new Ring(Thread.currentThread());
+        rings.add(ring);
+        return ring;
+    });
+    private static final LongAdder dropped = new LongAdder();
+    // the first event the sink failed on is printed, later ones are only counted
+    private static boolean drainFailed = false;
+    private static final Object drainLock = new Object();
+    // events drained while there is no sink are discarded
+    private static volatile TraceSink sink = null;
+    private static Thread drainer = null;
+    private static Thread shutdownHook = null;
 
-    public static void setEnabled(boolean enabled) {
+    // set by the agent: fraction of calls traced, and the duration below which a
+    // timed call only goes into its method's statistics (negative: every call is an event)
+    private static volatile double sampleRate = 1;
+    private static volatile long thresholdNanos = -1;
+    private static volatile Path statsFile = null;
+
+    public static synchronized void setEnabled(boolean enabled) {
         TraceLogger.enabled = enabled;
+        if (enabled && drainer == null) {
+            drainer = new Thread(TraceLogger::drainLoop, "trace-drainer");
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // where drained events go, on the drainer thread; the previous sink is not closed
+    public static void setSink(TraceSink sink) {
+        TraceLogger.sink = sink;
+    }
+
+    // starts tracing into sink until close(), which also runs at JVM exit
+    public static synchronized void open(TraceSink sink) {
+        setSink(sink);
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(TraceLogger::close, "trace-close");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+        setEnabled(true);
+    }
+
+    public static void configure(double sampleRate, long thresholdMicros, Path statsFile) {
+        TraceLogger.sampleRate = sampleRate;
+        TraceLogger.thresholdNanos = thresholdMicros < 0 ? -1 : thresholdMicros * 1000;
+        TraceLogger.statsFile = statsFile;
+    }
+
+    // stops tracing and hands what is still buffered to the sink before closing it; the
+    // per-method statistics are added to the trace as instant events and written to the stats file
+    public static void close() {
+        enabled = false;
+        synchronized (drainLock) {
+            drain();
+            TraceSink current = sink;
+            sink = null;
+            List<TraceMethod> timed = TraceMethod.timed();
+            if (current != null) {
+                long lost = getDroppedEvents();
+                if (lost > 0) {
+                    current.accept(new TraceEvent("droppedEvents", "i", nowMicro(), pid, 0, Map.of("count", String.valueOf(lost))));
+                }
+                for (TraceMethod method : timed) {
+                    TraceEvent event = new TraceEvent(method.label, "i", nowMicro(), pid, 0, method.stats());
+                    event.cat = "stats";
+                    current.accept(event);
+                }
+                current.close();
+            }
+            if (statsFile != null && !timed.isEmpty()) {
+                writeStats(timed, statsFile);
+            }
+        }
+    }
+
+    private static void writeStats(List<TraceMethod> timed, Path file) {
+        StringBuilder text = new StringBuilder(String.format("%-48s %10s %12s %10s %10s  %s%n",
+            "method", "calls", "total us", "mean us", "max us", "histogram"));
+        for (TraceMethod method : timed) {
+            Map<String, String> stats = method.stats();
+            text.append(String.format("%-48s %10s %12s %10s %10s  %s%n", method.label,
+                stats.get("calls"), stats.get("totalUs"), stats.get("meanUs"), stats.get("maxUs"), stats.get("histogram")));
+        }
+        try {
+            Files.writeString(file, text);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // events lost because a thread's ring was full
+    public static long getDroppedEvents() {
+        return dropped.sum();
     }
 
     private static long nowMicro() {
@@ -31,32 +141,82 @@ public class TraceLogger {
 
     public static void addEvent(TraceEvent event) {
         if (enabled) {
-            events.add(event);
+            record(event.name, event.ph, event.cat, event.ts, event.duration == null ? -1 : event.duration, event.args);
+        }
+    }
+
+    private static void record(String name, String ph, String category, long ts, long duration, Map<String, String> args) {
+        if (!localRing.get().offer(name, ph, category, ts, duration, args)) {
+            dropped.increment();
         }
     }
 
     public static void instant(String name, String category, Map<String, String> args) {
-        TraceEvent e = new TraceEvent(name, "i", nowMicro(), pid, (int) Thread.currentThread().getId(), args);
-        e.cat = category;
-        addEvent(e);
+        if (enabled) {
+            record(name, "i", category, nowMicro(), -1, args);
+        }
     }
 
     public static void begin(String name, Map<String, String> args) {
-        addEvent(new TraceEvent(name, "B", nowMicro(), pid, (int) Thread.currentThread().getId(), args));
+        if (enabled) {
+            record(name, "B", null, nowMicro(), -1, args);
+        }
     }
 
     public static void end(String name, Map<String, String> args) {
-        addEvent(new TraceEvent(name, "E", nowMicro(), pid, (int) Thread.currentThread().getId(), args));
+        if (enabled) {
+            record(name, "E", null, nowMicro(), -1, args);
+        }
     }
 
     public static void complete(String name, long durationMicros, Map<String, String> args) {
-        addEvent(new TraceEvent(name, "X", nowMicro(), pid, (int) Thread.currentThread().getId(), args, durationMicros));
+        if (enabled) {
+            // ts is the start of the call, which ended now
+            record(name, "X", null, nowMicro() - durationMicros, durationMicros, args);
+        }
+    }
+
+    // Used by the agent's advice. argValues are the method's arguments or null; the ones the
+    // method records are turned into strings right away, on the traced thread, while they
+    // still hold the values of the call. Only methods with @TraceArg parameters pay for it.
+    public static void begin(TraceMethod method, Object[] argValues) {
+        if (enabled) {
+            record(method.label, "B", null, nowMicro(), -1, method.args(argValues));
+        }
+    }
+
+    public static void end(TraceMethod method) {
+        if (enabled) {
+            record(method.label, "E", null, nowMicro(), -1, null);
+        }
+    }
+
+    public static void complete(TraceMethod method, long durationMicros, Object[] argValues) {
+        if (enabled) {
+            record(method.label, "X", null, nowMicro() - durationMicros, durationMicros, method.args(argValues));
+        }
+    }
+
+    // whether the call about to start is traced
+    public static boolean sample() {
+        double rate = sampleRate;
+        return enabled && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    // a timed call that has ended: counted in its method's statistics, and an event if it was slow
+    public static void call(TraceMethod method, long durationNanos, Object[] argValues) {
+        method.addCall(durationNanos);
+        if (durationNanos >= thresholdNanos) {
+            complete(method, durationNanos / 1000, argValues);
+        }
     }
 
     public static void metadata(String name, String value) {
-        Map<String, String> args = new HashMap<>();
-        args.put("name", value);
-        addEvent(new TraceEvent(name, "M", nowMicro(), pid, (int) Thread.currentThread().getId(), args));
+        if (enabled) {
+            Map<String, String> args = new HashMap<>();
+            args.put("name", value);
+            record(name, "M", null, nowMicro(), -1, args);
+        }
     }
 
     public static <T> T trace(String name, Supplier<T> action) {
@@ -89,22 +249,126 @@ public class TraceLogger {
         }
     }
 
-    public static void save(String filename)
-    {
-        if (!enabled) {
-            return;
+    private static void drainLoop() {
+        while (true) {
+            synchronized (drainLock) {
+                try {
+                    drain();
+                    TraceSink current = sink;
+                    if (current != null) {
+                        current.flush();
+                    }
+                }
+                catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+            LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
         }
-        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
-        ObjectWriter writer = mapper.writer();
+    }
 
-        Map<String, Object> output = new HashMap<>();
-        output.put("traceEvents", events);
-        try {
-            writer.writeValue(new File(filename), output);
-        }
-        catch (IOException e) {
-            e.printStackTrace();
+    // moves everything recorded so far to the sink; rings of finished threads are drained once more and dropped
+    public static void drain() {
+        synchronized (drainLock) {
+            TraceSink target = sink;
+            for (Ring ring : rings) {
+                // checked before draining: a thread seen dead has published all it ever will
+                boolean finished = !ring.owner.isAlive();
+                ring.drain(target);
+                if (finished) {
+                    rings.remove(ring);
+                }
+            }
         }
     }
 
+    private static final class Slot {
+        String name;
+        String ph;
+        String category;
+        long ts;
+        long duration;
+        Map<String, String> args;
+    }
+
+    // Single-producer single-consumer ring: the owner thread fills slots and
+    // publishes them by a release store of tail; the drainer reads up to an
+    // acquired tail and hands the slots back by a release store of head.
+    private static final class Ring {
+        private static final int MASK = RING_CAPACITY - 1;
+        private static final VarHandle HEAD;
+        private static final VarHandle TAIL;
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                HEAD = lookup.findVarHandle(Ring.class, "head", long.class);
+                TAIL = lookup.findVarHandle(Ring.class, "tail", long.class);
+            }
+            catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final Thread owner;
+        final int tid;
+        final Slot[] slots = new Slot[RING_CAPACITY];
+        private long head = 0;        // next slot to drain, written by the drainer
+        private long tail = 0;        // next slot to fill, written by the owner
+        private long cachedHead = 0;  // owner's last view of head
+
+        Ring(Thread owner) {
+            this.owner = owner;
+            this.tid = (int) owner.getId();
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = new Slot();
+            }
+        }
+
+        boolean offer(String name, String ph, String category, long ts, long duration, Map<String, String> args) {
+            long t = tail;
+            if (t - cachedHead >= RING_CAPACITY) {
+                cachedHead = (long) HEAD.getAcquire(this);
+                if (t - cachedHead >= RING_CAPACITY) {
+                    return false;
+                }
+            }
+
+            Slot slot = slots[(int) t & MASK];
+            slot.name = name;
+            slot.ph = ph;
+            slot.category = category;
+            slot.ts = ts;
+            slot.duration = duration;
+            slot.args = args;
+            TAIL.setRelease(this, t + 1);
+            return true;
+        }
+
+        void drain(TraceSink target) {
+            long h = head;
+            long t = (long) TAIL.getAcquire(this);
+            for (long i = h; i < t; i++) {
+                Slot slot = slots[(int) i & MASK];
+                if (target != null) {
+                    // a failing sink loses this event, not the drainer thread and every later event
+                    try {
+                        TraceEvent event = slot.duration < 0
+                            ? new TraceEvent(slot.name, slot.ph, slot.ts, pid, tid, slot.args)
+                            : new TraceEvent(slot.name, slot.ph, slot.ts, pid, tid, slot.args, slot.duration);
+                        event.cat = slot.category;
+                        target.accept(event);
+                    }
+                    catch (RuntimeException e) {
+                        dropped.increment();
+                        if (!drainFailed) {
+                            drainFailed = true;
+                            e.printStackTrace();
+                        }
+                    }
+                }
+                slot.args = null;
+            }
+            HEAD.setRelease(this, t);
+        }
+    }
 }
@@ -0,0 +1,127 @@
+package app.debug;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// What the trace agent knows about an instrumented method, worked out once
+// when its class is transformed. Advice code refers to it by id, a constant
+// in the instrumented bytecode, so a traced call does no reflection.
+public final class TraceMethod {
+    private static final Map<String, Integer> ids = new HashMap<>();
+    private static volatile TraceMethod[] methods = new TraceMethod[0];
+
+    public final String label;
+    private final String[] argKeys;     // keys of the recorded arguments
+    private final int[] argIndexes;     // and their positions in the argument list
+
+    // every timed call, slow or not, when the agent runs with a threshold
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+    private final AtomicLongArray histogram = new AtomicLongArray(32);   // bucket i: [2^(i-1), 2^i) us
+
+    private TraceMethod(String label, String[] argKeys, int[] argIndexes) {
+        this.label = label;
+        this.argKeys = argKeys;
+        this.argIndexes = argIndexes;
+    }
+
+    // id of the method with this signature, the same for enter and exit advice
+    public static synchronized int register(String signature, String label, String[] argKeys, int[] argIndexes) {
+        Integer id = ids.get(signature);
+        if (id != null) {
+            return id;
+        }
+
+        TraceMethod[] current = methods;
+        TraceMethod[] next = new TraceMethod[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = new TraceMethod(label, argKeys, argIndexes);
+        methods = next;
+        ids.put(signature, current.length);
+        return current.length;
+    }
+
+    public static TraceMethod get(int id) {
+        return methods[id];
+    }
+
+    void addCall(long nanos) {
+        calls.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        long micros = nanos / 1000;
+        histogram.incrementAndGet(Math.min(histogram.length() - 1, 64 - Long.numberOfLeadingZeros(micros)));
+    }
+
+    // timed methods, most total time first
+    static List<TraceMethod> timed() {
+        List<TraceMethod> timed = new ArrayList<>();
+        for (TraceMethod method : methods) {
+            if (method.calls.sum() > 0) {
+                timed.add(method);
+            }
+        }
+        timed.sort(Comparator.comparingLong((TraceMethod method) -> method.totalNanos.sum()).reversed());
+        return timed;
+    }
+
+    Map<String, String> stats() {
+        long count = calls.sum();
+        long total = totalNanos.sum();
+        Map<String, String> stats = new LinkedHashMap<>();
+        stats.put("calls", String.valueOf(count));
+        stats.put("totalUs", String.valueOf(total / 1000));
+        stats.put("meanUs", String.format("%.2f", count == 0 ? 0.0 : total / 1000.0 / count));
+        stats.put("maxUs", String.valueOf(maxNanos.get() / 1000));
+        stats.put("histogram", histogramText());
+        return stats;
+    }
+
+    // non-empty buckets as "<1us:n 1us:n 2us:n 4us:n ...", each bucket up to twice its bound
+    private String histogramText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < histogram.length(); i++) {
+            long count = histogram.get(i);
+            if (count == 0) {
+                continue;
+            }
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(i == 0 ? "<1" : String.valueOf(1L << (i - 1))).append("us:").append(count);
+        }
+        return text.toString();
+    }
+
+    public boolean capturesArgs() {
+        return argKeys.length > 0;
+    }
+
+    // the recorded arguments as trace args, null when there are none; runs on the traced thread,
+    // so the values are those of the call. A failing toString is recorded instead of thrown.
+    Map<String, String> args(Object[] values) {
+        if (values == null || argKeys.length == 0) {
+            return null;
+        }
+        Map<String, String> args = new LinkedHashMap<>();
+        for (int i = 0; i < argKeys.length; i++) {
+            String text;
+            try {
+                text = String.valueOf(values[argIndexes[i]]);
+            }
+            catch (RuntimeException e) {
+                text = "<" + e + ">";
+            }
+            args.put(argKeys[i], text);
+        }
+        return args;
+    }
+}
@@ -0,0 +1,14 @@
+package app.debug;
+
+// Receives the events drained from the per-thread buffers, always on one
+// thread at a time (the drainer, or the caller of TraceLogger.close)
+@FunctionalInterface
+public interface TraceSink extends AutoCloseable {
+    void accept(TraceEvent event);
+
+    // called periodically by the drainer
+    default void flush() {}
+
+    @Override
+    default void close() {}
+}
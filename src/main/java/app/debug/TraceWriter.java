@@ -0,0 +1,155 @@
+package app.debug;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+// Streams events to a Chrome trace file in the JSON array format, compact,
+// one event per line. The closing bracket is optional in that format, so a
+// file cut short by a crash still loads in Perfetto up to the last flush;
+// gzip output is flushed with SYNC_FLUSH for the same reason. When a file
+// reaches maxBytes it is closed and the next one started: trace.json,
+// trace.1.json, trace.2.json, ... keeping the newest maxFiles.
+public class TraceWriter implements TraceSink {
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final Path base;
+    private final boolean gzip;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final long flushIntervalNanos;
+
+    private int fileIndex = 0;
+    private CountingOutputStream counter;
+    private JsonGenerator generator;
+    private long lastFlush = System.nanoTime();
+
+    // maxBytes <= 0 disables rotation
+    public TraceWriter(Path file, boolean gzip, long maxBytes, int maxFiles, long flushIntervalMillis) throws IOException {
+        this.base = file;
+        this.gzip = gzip;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        this.flushIntervalNanos = flushIntervalMillis * 1_000_000;
+        open();
+    }
+
+    private Path path(int index) {
+        String name = base.getFileName().toString();
+        int dot = name.indexOf('.');
+        String stem = dot < 0 ? name : name.substring(0, dot);
+        String extension = dot < 0 ? "" : name.substring(dot);
+        if (index > 0) {
+            stem += "." + index;
+        }
+        if (gzip && !extension.endsWith(".gz")) {
+            extension += ".gz";
+        }
+        return base.resolveSibling(stem + extension);
+    }
+
+    private void open() throws IOException {
+        counter = new CountingOutputStream(Files.newOutputStream(path(fileIndex)));
+        OutputStream out = gzip ? new GZIPOutputStream(counter, 1 << 16, true) : counter;
+        generator = factory.createGenerator(out, JsonEncoding.UTF8);
+        generator.writeStartArray();
+        generator.writeRaw('\n');
+
+        if (fileIndex >= maxFiles) {
+            Files.deleteIfExists(path(fileIndex - maxFiles));
+        }
+    }
+
+    @Override
+    public void accept(TraceEvent event) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("name", event.name);
+            generator.writeStringField("ph", event.ph);
+            generator.writeNumberField("ts", event.ts);
+            generator.writeNumberField("pid", event.pid);
+            generator.writeNumberField("tid", event.tid);
+            if (event.cat != null) {
+                generator.writeStringField("cat", event.cat);
+            }
+            if (event.duration != null) {
+                generator.writeNumberField("dur", event.duration);
+            }
+            if (event.args != null && !event.args.isEmpty()) {
+                generator.writeObjectFieldStart("args");
+                for (Map.Entry<String, String> arg : event.args.entrySet()) {
+                    generator.writeStringField(arg.getKey(), arg.getValue());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+
+            if (maxBytes > 0 && counter.count + generator.getOutputBuffered() >= maxBytes) {
+                finish();
+                fileIndex++;
+                open();
+            }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (System.nanoTime() - lastFlush < flushIntervalNanos) {
+            return;
+        }
+        try {
+            generator.flush();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+        lastFlush = System.nanoTime();
+    }
+
+    private void finish() throws IOException {
+        generator.writeEndArray();
+        generator.close();
+    }
+
+    @Override
+    public void close() {
+        try {
+            finish();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}